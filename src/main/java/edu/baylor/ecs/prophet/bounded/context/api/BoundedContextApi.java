@@ -5,6 +5,10 @@
 package edu.baylor.ecs.prophet.bounded.context.api;
 
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface to accept requests from outside
@@ -19,5 +23,25 @@ public interface BoundedContextApi {
      * @param systemName
      * @return
      */
-    BoundedContext getBoundedContext(SystemContext systemName, boolean useWuPalmer);
+    default BoundedContext getBoundedContext(SystemContext systemName, boolean useWuPalmer){
+        return getBoundedContext(systemName, SimilarityMode.of(useWuPalmer));
+    }
+
+    /**
+     * creates the bounded context of a system
+     * @param systemName the system context
+     * @param mode how names are compared
+     * @return the bounded context
+     */
+    BoundedContext getBoundedContext(SystemContext systemName, SimilarityMode mode);
+
+    /**
+     * creates the bounded context of a system without blocking the caller
+     * @param systemName the system context
+     * @param mode how names are compared
+     * @return completes with the bounded context
+     */
+    default CompletableFuture<BoundedContext> getBoundedContextAsync(SystemContext systemName, SimilarityMode mode){
+        return ExecutionBackend.shared().submit(() -> getBoundedContext(systemName, mode));
+    }
 }
@@ -5,26 +5,159 @@
 
 package edu.baylor.ecs.prophet.bounded.context.api.impl;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.BoundedContext;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.SystemContext;
 import edu.baylor.ecs.prophet.bounded.context.api.BoundedContextApi;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
 import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextUtils;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
 import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedContextUtilsImpl;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * @author Ian Laird
  * @see edu.baylor.ecs.prophet.bounded.context.api.BoundedContextApi
  */
 public class BoundedContextApiImpl implements BoundedContextApi {
 
+    private static final Gson GSON = new Gson();
+
+    /**
+     * part of every cache key, change it whenever the engine gives different results or the json of a result changes
+     * so results cached on disk by an older version are not used
+     */
+    static final String CACHE_VERSION = "1";
+
+    // the options every bounded context is created with
+    private final BoundedContextConfig config;
+
+    // earlier results, null if caching is off
+    private final BoundedContextCache cache;
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public BoundedContextApiImpl() {
+        this(new BoundedContextConfig());
+    }
+
+    /**
+     * @param config the options every bounded context is created with
+     */
+    public BoundedContextApiImpl(BoundedContextConfig config) {
+        this.config = new BoundedContextConfig(config);
+        this.cache = this.config.isResultCached()
+                ? new BoundedContextCache(this.config.getResultCacheBytes(), this.config.getResultCacheDirectory(), this.config.getResultCacheDiskBytes())
+                : null;
+    }
+
     /**
      * gets {@link BoundedContext} for the given System name
      * @param systemContext context maps
+     * @param mode how names are compared
      * @return the bounded context for that system
      */
     @Override
-    public BoundedContext getBoundedContext(SystemContext systemContext, boolean useWuPalmer) {
-        BoundedContextUtils boundedContextUtils = new BoundedContextUtilsImpl();
-        return boundedContextUtils.createBoundedContext(systemContext, useWuPalmer);
+    public BoundedContext getBoundedContext(SystemContext systemContext, SimilarityMode mode) {
+        if (cache == null) {
+            return create(systemContext, mode);
+        }
+
+        String key = cacheKey(systemContext, mode);
+        byte[] cached = cache.get(key);
+        if (cached != null) {
+            try {
+                BoundedContext boundedContext = GSON.fromJson(new String(cached, StandardCharsets.UTF_8), BoundedContext.class);
+                if (boundedContext != null) {
+                    cacheHits.increment();
+                    return boundedContext;
+                }
+            } catch (JsonParseException e) {
+                // a damaged file on disk is replaced by a new result
+            }
+        }
+        cacheMisses.increment();
+
+        BoundedContext boundedContext = create(systemContext, mode);
+        cache.put(key, GSON.toJson(boundedContext).getBytes(StandardCharsets.UTF_8));
+        return boundedContext;
+    }
+
+    /**
+     * the SHA-256 of the cache version, the mode, the options and the json of the system, streamed through one digest
+     * <p>
+     * a resubmitted copy of a system is found as long as its sets iterate in the same order, which holds for copies
+     * read from the same json. Copies whose sets are ordered differently are only missed, never confused.
+     */
+    private String cacheKey(SystemContext systemContext, SimilarityMode mode) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update((CACHE_VERSION + '/' + mode + '/' + config + '/').getBytes(StandardCharsets.UTF_8));
+        try (Writer json = new OutputStreamWriter(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, digest), StandardCharsets.UTF_8)) {
+            GSON.toJson(systemContext, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private BoundedContext create(SystemContext systemContext, SimilarityMode mode) {
+        BoundedContextUtils boundedContextUtils = new BoundedContextUtilsImpl(config);
+        return boundedContextUtils.createBoundedContext(systemContext, mode);
+    }
+
+    /**
+     * @return how many results came from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return how many results had to be created while caching was on
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * creates the bounded context on the execution backend of the config
+     * @param systemContext context maps
+     * @param mode how names are compared
+     * @return completes with the bounded context for that system
+     */
+    @Override
+    public CompletableFuture<BoundedContext> getBoundedContextAsync(SystemContext systemContext, SimilarityMode mode) {
+        return config.getExecutionBackend().submit(() -> getBoundedContext(systemContext, mode));
     }
 }
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.api.impl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * least recently used cache of serialized bounded contexts, bounded by the bytes it holds
+ * <p>
+ * results are stored as json so every hit is deserialized into a new copy. With a directory every result is also
+ * written to disk, and results evicted from memory are read back from there. The directory is kept within its own
+ * limit by removing the files used least recently. Disk io happens outside the lock of the memory tier, and a disk that
+ * cannot be read or written only costs the results it would have kept.
+ */
+class BoundedContextCache {
+
+    private final long capacityBytes;
+
+    private final Path directory;
+
+    private final long diskCapacityBytes;
+
+    // access order, so the first entry is the least recently used one
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeBytes = 0;
+
+    // guards diskBytes and pruning, never held together with the lock of the memory tier
+    private final Object diskLock = new Object();
+
+    // bytes of results in the directory, -1 until it is first counted
+    private long diskBytes = -1;
+
+    /**
+     * @param capacityBytes the bytes of json kept in memory
+     * @param directory where results are also written, null for memory only
+     * @param diskCapacityBytes the bytes of json kept in the directory
+     */
+    BoundedContextCache(long capacityBytes, Path directory, long diskCapacityBytes) {
+        if (capacityBytes < 0 || diskCapacityBytes < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacityBytes = capacityBytes;
+        this.directory = directory;
+        this.diskCapacityBytes = diskCapacityBytes;
+    }
+
+    /**
+     * @param key the content hash of the request
+     * @return the json of the result, null if it is not cached
+     */
+    byte[] get(String key) {
+        synchronized (this) {
+            byte[] json = entries.get(key);
+            if (json != null || directory == null) {
+                return json;
+            }
+        }
+        byte[] json;
+        try {
+            Path file = file(key);
+            json = Files.readAllBytes(file);
+            // the modification time orders files for pruning, so a hit counts as a use
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("could not read cached result " + key + ": " + e);
+            return null;
+        }
+        synchronized (this) {
+            remember(key, json);
+        }
+        return json;
+    }
+
+    /**
+     * @param key the content hash of the request
+     * @param json the json of the result
+     */
+    void put(String key, byte[] json) {
+        synchronized (this) {
+            remember(key, json);
+        }
+        if (directory == null || json.length > diskCapacityBytes) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            // written next to the target first so a reader never sees half a file
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temp, json);
+                Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("could not write cached result " + key + ": " + e);
+            return;
+        }
+        written(json.length);
+    }
+
+    /**
+     * @return the bytes of json held in memory
+     */
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    private void remember(String key, byte[] json) {
+        if (json.length > capacityBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, json);
+        sizeBytes += json.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (sizeBytes > capacityBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * counts a written result and prunes the directory once it holds too much
+     */
+    private void written(long bytes) {
+        synchronized (diskLock) {
+            if (diskBytes >= 0) {
+                diskBytes += bytes;
+                if (diskBytes <= diskCapacityBytes) {
+                    return;
+                }
+            }
+            try {
+                diskBytes = prune();
+            } catch (IOException e) {
+                System.err.println("could not prune the result cache: " + e);
+                diskBytes = -1;
+            }
+        }
+    }
+
+    /**
+     * removes the least recently used results until the directory is within its limit
+     * @return the bytes of results left
+     */
+    private long prune() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> results = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : results) {
+                files.add(file);
+            }
+        }
+        Map<Path, FileTime> used = new LinkedHashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            try {
+                used.put(file, Files.getLastModifiedTime(file));
+                total += Files.size(file);
+            } catch (NoSuchFileException e) {
+                // removed by another process meanwhile
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(used.keySet());
+        oldestFirst.sort(Comparator.comparing(used::get));
+        for (Path file : oldestFirst) {
+            if (total <= diskCapacityBytes) {
+                break;
+            }
+            try {
+                long size = Files.size(file);
+                Files.delete(file);
+                total -= size;
+            } catch (NoSuchFileException e) {
+                // removed by another process meanwhile
+            }
+        }
+        return total;
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + ".json");
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.BoundedContext;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.SystemContext;
+import edu.baylor.ecs.prophet.bounded.context.api.BoundedContextApi;
+import edu.baylor.ecs.prophet.bounded.context.api.impl.BoundedContextApiImpl;
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.profiling.HeapMonitor;
+import edu.baylor.ecs.prophet.bounded.context.profiling.StageProfiler;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
+import edu.baylor.ecs.prophet.bounded.context.utils.MergeStrategy;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedContextUtilsImpl;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.SimilarityProfile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * command line runner that turns system context json files into bounded context json files
+ * <p>
+ * prints the time and allocation of every stage when it is done, so batch jobs can see where a run spent its time
+ */
+public class BoundedContextCli {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: BoundedContextCli [options] <system context file or directory>...",
+            "  --mode <basic|wu_palmer|embedding|lexical>   how names are compared (default wu_palmer)",
+            "  --strategy <pairwise|global>                 how modules are combined (default pairwise)",
+            "  --cutoff <similarity>                        entity similarity cutoff (default " + BoundedContextConfig.DEFAULT_ENTITY_SIMILARITY_CUTOFF + ")",
+            "  --parallelism <n>                            systems analysed at once (default 1)",
+            "  --backend <platform|virtual|auto>            threads the systems are analysed on (default platform)",
+            "  --memory-budget <bytes>                      keep pending modules within this many bytes",
+            "  --deterministic                              same output for the same input on every run",
+            "  --similarity-profile                         export the entity similarities and a cutoff sweep instead",
+            "  --output <directory>                         where results are written (default .)");
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private SimilarityMode mode = SimilarityMode.WU_PALMER;
+
+    private BoundedContextConfig config = new BoundedContextConfig();
+
+    private int parallelism = 1;
+
+    private String backendName = "platform";
+
+    private boolean similarityProfile = false;
+
+    private Path output = Paths.get(".");
+
+    private final List<Path> inputs = new ArrayList<>();
+
+    public static void main(String[] args) {
+        System.exit(execute(args));
+    }
+
+    /**
+     * reads the command line and analyses every input
+     * @param args the command line
+     * @return the exit code, 0 if every input was analysed, 1 if any input failed and 2 if the command line is wrong
+     */
+    public static int execute(String... args) {
+        BoundedContextCli cli = new BoundedContextCli();
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        return cli.run();
+    }
+
+    /**
+     * reads the options and inputs
+     * @param args the command line
+     */
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                inputs.add(Paths.get(arg));
+                continue;
+            }
+            if (arg.equals("--deterministic")) {
+                config.setDeterministic(true);
+                continue;
+            }
+            if (arg.equals("--similarity-profile")) {
+                similarityProfile = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--mode":
+                    mode = SimilarityMode.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "--strategy":
+                    config.setMergeStrategy(MergeStrategy.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "--cutoff":
+                    config.setEntitySimilarityCutoff(Double.parseDouble(value));
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(value);
+                    if (parallelism < 1) {
+                        throw new IllegalArgumentException("parallelism must be at least 1");
+                    }
+                    break;
+                case "--backend":
+                    backendName = value.toLowerCase(Locale.ROOT);
+                    if (!Arrays.asList("platform", "virtual", "auto").contains(backendName)) {
+                        throw new IllegalArgumentException("unknown backend " + value);
+                    }
+                    if (backendName.equals("virtual") && !ExecutionBackend.isVirtualThreadsSupported()) {
+                        throw new IllegalArgumentException("virtual threads need Java 21 or later");
+                    }
+                    break;
+                case "--memory-budget":
+                    config.setMemoryBudget(Long.parseLong(value));
+                    break;
+                case "--output":
+                    output = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("no input files");
+        }
+    }
+
+    /**
+     * analyses every input and prints the profile
+     * @return the exit code, 1 if any input failed
+     */
+    int run() {
+        StageProfiler profiler = new StageProfiler();
+        config.setProfiler(profiler);
+
+        // each input file and the name of its results, relative to the output directory
+        Map<Path, String> names;
+        try {
+            names = expand(inputs);
+            Files.createDirectories(output);
+        } catch (IOException e) {
+            System.err.println("could not read inputs: " + e.getMessage());
+            return 1;
+        }
+        List<Path> files = new ArrayList<>(names.keySet());
+
+        long start = System.nanoTime();
+        int failures = 0;
+        long peakHeap;
+        try (HeapMonitor heap = new HeapMonitor(); ExecutionBackend backend = createBackend()) {
+            config.setExecutionBackend(backend);
+            BoundedContextApi api = new BoundedContextApiImpl(config);
+
+            // bounds the systems in flight, virtual threads would otherwise start all of them at once
+            Semaphore permits = new Semaphore(parallelism);
+            List<CompletableFuture<Path>> results = new ArrayList<>(files.size());
+            for (Path file : files) {
+                permits.acquireUninterruptibly();
+                CompletableFuture<SystemContext> systemContext = backend.submit(() -> read(profiler, file));
+                CompletableFuture<Path> result = similarityProfile
+                        ? systemContext.thenApply(system -> writeSimilarityProfile(profiler, file, names.get(file), system))
+                        : systemContext.thenCompose(system -> api.getBoundedContextAsync(system, mode))
+                                .thenApply(boundedContext -> write(profiler, names.get(file), boundedContext));
+                result.whenComplete((path, failure) -> permits.release());
+                results.add(result);
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    results.get(i).join();
+                } catch (CompletionException e) {
+                    failures++;
+                    System.err.println("failed " + files.get(i) + ": " + e.getCause());
+                }
+            }
+            System.err.println();
+            System.err.println("backend " + backend.getName());
+            peakHeap = heap.getPeakBytes();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.err.print(profiler.report());
+        System.err.printf("%d systems, %d failed, %.1f ms wall, %.1f MB peak heap%n",
+                files.size(), failures, elapsed / 1e6, peakHeap / (1024.0 * 1024.0));
+        return failures == 0 ? 0 : 1;
+    }
+
+    private ExecutionBackend createBackend() {
+        switch (backendName) {
+            case "virtual":
+                return ExecutionBackend.virtual();
+            case "auto":
+                return ExecutionBackend.automatic(parallelism);
+            default:
+                return ExecutionBackend.platform(parallelism);
+        }
+    }
+
+    private static SystemContext read(StageProfiler profiler, Path file) {
+        return profiler.time("read", () -> {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return GSON.fromJson(in, SystemContext.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path write(StageProfiler profiler, String name, BoundedContext boundedContext) {
+        Path target = output.resolve(name + ".boundedContext.json");
+        return profiler.time("write", () -> {
+            try (Writer out = newWriter(target)) {
+                GSON.toJson(boundedContext, out);
+                return target;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * scores the entity pairs of a system once, writes them as csv and binary and prints the outcome of a cutoff sweep
+     * @return the binary file
+     */
+    private Path writeSimilarityProfile(StageProfiler profiler, Path file, String name, SystemContext systemContext) {
+        SimilarityProfile similarities = profiler.time("score", () -> new BoundedContextUtilsImpl(config).createSimilarityProfile(systemContext, mode));
+
+        Path csv = output.resolve(name + ".similarity.csv");
+        Path binary = output.resolve(name + ".similarity.bin");
+        profiler.run("write", () -> {
+            try (Writer out = newWriter(csv);
+                 OutputStream bin = Files.newOutputStream(binary)) {
+                similarities.writeCsv(out);
+                similarities.writeBinary(bin);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        StringBuilder sweep = new StringBuilder(file.toString()).append(System.lineSeparator());
+        sweep.append(String.format("  %-8s %10s %10s%n", "cutoff", "entities", "merged"));
+        for (int step = 0; step <= 20; step++) {
+            SimilarityProfile.Outcome outcome = similarities.evaluate(step / 20.0);
+            sweep.append(String.format("  %-8.2f %10d %10d%n", outcome.getCutoff(), outcome.getGroupCount(), outcome.getMergedEntityCount()));
+        }
+        System.out.print(sweep);
+        return binary;
+    }
+
+    /**
+     * creates the directories of a result file and opens it
+     */
+    private static Writer newWriter(Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        return Files.newBufferedWriter(target, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * finds the json files given and names their results
+     * <p>
+     * a file given directly is named by its base name, a file found in a directory by its path within that directory,
+     * so "a/system.json" and "b/system.json" in one directory are written apart
+     * @return each json file, with directories replaced by the json files in them, and the name of its results
+     * @throws IOException if an input does not exist or two inputs would write the same results
+     */
+    private static Map<Path, String> expand(List<Path> inputs) throws IOException {
+        Map<Path, String> names = new LinkedHashMap<>();
+        Map<String, Path> written = new HashMap<>();
+        for (Path input : inputs) {
+            List<Path> files;
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    files = walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".json"))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+            } else if (Files.isRegularFile(input)) {
+                files = Collections.singletonList(input);
+            } else {
+                throw new IOException("no such file " + input);
+            }
+            for (Path file : files) {
+                Path relative = Files.isDirectory(input) ? input.relativize(file) : file.getFileName();
+                String name = withoutJson(relative.toString().replace(relative.getFileSystem().getSeparator(), "/"));
+                Path other = written.putIfAbsent(name, file);
+                if (other != null && !other.equals(file)) {
+                    throw new IOException("both " + other + " and " + file + " would be written as " + name);
+                }
+                names.putIfAbsent(file, name);
+            }
+        }
+        return names;
+    }
+
+    private static String withoutJson(String name) {
+        return name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.execution;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * runs analyses off the calling thread
+ * <p>
+ * analyses block on WordNet lookups and file io, so on runtimes with virtual threads each task gets its own virtual
+ * thread and thousands can be in flight. Older runtimes fall back to a pool of platform threads.
+ */
+public interface ExecutionBackend extends AutoCloseable {
+
+    /**
+     * runs a task
+     * @param task the work to run
+     * @param <T> the result type
+     * @return completes with the result of the task, or exceptionally with what it threw
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> task);
+
+    /**
+     * @return a short description, such as "virtual" or "platform(8)"
+     */
+    String getName();
+
+    /**
+     * stops taking tasks, tasks already submitted still run
+     */
+    @Override
+    void close();
+
+    /**
+     * @return true if this runtime supports virtual threads
+     */
+    static boolean isVirtualThreadsSupported() {
+        return ExecutorServiceBackend.virtualExecutorFactory() != null;
+    }
+
+    /**
+     * @param threads the number of threads in the pool
+     * @return a backend running tasks on a fixed pool of daemon threads
+     */
+    static ExecutionBackend platform(int threads) {
+        return ExecutorServiceBackend.platform(threads);
+    }
+
+    /**
+     * @return a backend running every task on its own virtual thread
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    static ExecutionBackend virtual() {
+        return ExecutorServiceBackend.virtual();
+    }
+
+    /**
+     * @param threads the pool size if virtual threads are not supported
+     * @return a virtual thread backend if supported, otherwise a platform backend
+     */
+    static ExecutionBackend automatic(int threads) {
+        return isVirtualThreadsSupported() ? virtual() : platform(threads);
+    }
+
+    /**
+     * @return a backend shared by everything that does not configure its own, never closed
+     */
+    static ExecutionBackend shared() {
+        return ExecutorServiceBackend.SHARED;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.execution;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * {@link ExecutionBackend} on top of an {@link ExecutorService}
+ * <p>
+ * the project targets Java 8, so the virtual thread executor is looked up reflectively
+ */
+class ExecutorServiceBackend implements ExecutionBackend {
+
+    private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+
+    // after the factory lookup, static fields are initialised in order
+    static final ExecutionBackend SHARED = ExecutionBackend.automatic(Runtime.getRuntime().availableProcessors());
+
+    private final ExecutorService executor;
+
+    private final String name;
+
+    private ExecutorServiceBackend(ExecutorService executor, String name) {
+        this.executor = executor;
+        this.name = name;
+    }
+
+    static ExecutionBackend platform(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "bounded-context-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ExecutorServiceBackend(Executors.newFixedThreadPool(threads, factory), "platform(" + threads + ")");
+    }
+
+    static ExecutionBackend virtual() {
+        if (VIRTUAL_EXECUTOR_FACTORY == null) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+        }
+        try {
+            return new ExecutorServiceBackend((ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null), "virtual");
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("could not create a virtual thread executor", e);
+        }
+    }
+
+    static Method virtualExecutorFactory() {
+        return VIRTUAL_EXECUTOR_FACTORY;
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        if (this != SHARED) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.profiling;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * tracks the most heap in use while it is open
+ * <p>
+ * the heap is fullest just before a garbage collection, so the used bytes of all heap pools are added up from the
+ * snapshot every collection takes before it starts. Those pools are measured at the same moment, unlike the peaks of
+ * the individual pools, which are reached at different times and overstate the peak when added up.
+ */
+public class HeapMonitor implements AutoCloseable {
+
+    private final AtomicLong peakBytes = new AtomicLong();
+
+    private final Set<String> heapPools = new HashSet<>();
+
+    private final List<NotificationEmitter> collectors = new ArrayList<>();
+
+    private final NotificationListener listener = (notification, handback) -> {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+            if (heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        record(used);
+    };
+
+    public HeapMonitor() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+                collectors.add((NotificationEmitter) collector);
+            }
+        }
+        record(usedBytes());
+    }
+
+    /**
+     * @return the most bytes of heap in use at a garbage collection or now, since this monitor was opened
+     */
+    public long getPeakBytes() {
+        record(usedBytes());
+        return peakBytes.get();
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter collector : collectors) {
+            try {
+                collector.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+        collectors.clear();
+    }
+
+    private void record(long used) {
+        peakBytes.accumulateAndGet(used, Math::max);
+    }
+
+    private static long usedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * records the wall time and heap allocation of named stages
+ * <p>
+ * allocation is read from the HotSpot per thread allocation counter of the thread running the stage, so work a stage
+ * hands to other threads is only counted when it runs through {@link #assist}. A stage run inside another stage on the
+ * same thread is only counted in the inner stage, so the stages of a report add up to the total. Safe to use from many
+ * threads.
+ */
+public class StageProfiler {
+
+    private static final StageProfiler DISABLED = new StageProfiler(false);
+
+    private final boolean enabled;
+
+    // per thread allocation counter, null if the JVM has none
+    private final com.sun.management.ThreadMXBean allocation;
+
+    private final ConcurrentMap<String, Stage> stages = new ConcurrentHashMap<>();
+
+    // for each running stage of a thread, the nanos and bytes of the stages nested in it so far
+    private final ThreadLocal<Deque<long[]>> running = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public StageProfiler(){
+        this(true);
+    }
+
+    private StageProfiler(boolean enabled){
+        this.enabled = enabled;
+        this.allocation = enabled ? allocationCounter() : null;
+    }
+
+    /**
+     * @return a profiler that runs stages without recording anything
+     */
+    public static StageProfiler disabled(){
+        return DISABLED;
+    }
+
+    /**
+     * totals of one stage
+     */
+    public static class Stage {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * @return the bytes allocated, -1 if the JVM cannot measure it
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+    }
+
+    /**
+     * runs a stage and records it
+     * @param stage the name of the stage
+     * @param work the work of the stage
+     * @return the result of the work
+     */
+    public <T> T time(String stage, Supplier<T> work){
+        if(!enabled){
+            return work.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        Deque<long[]> enclosing = running.get();
+        long[] nested = new long[2];
+        enclosing.push(nested);
+        long allocatedBefore = allocatedBytes(threadId);
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes(threadId);
+            long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? 0 : allocatedAfter - allocatedBefore;
+            enclosing.pop();
+
+            // the enclosing stage leaves out what this one records
+            long[] parent = enclosing.peek();
+            if(parent != null){
+                parent[0] += elapsed;
+                parent[1] += allocated;
+            }
+
+            Stage totals = stages.computeIfAbsent(stage, k -> new Stage());
+            totals.count.increment();
+            totals.nanos.add(elapsed - nested[0]);
+            totals.allocatedBytes.add(allocated - nested[1]);
+        }
+    }
+
+    /**
+     * runs a stage and records it
+     * @param stage the name of the stage
+     * @param work the work of the stage
+     */
+    public void run(String stage, Runnable work){
+        time(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * runs work that another thread hands out for a stage it is timing, the allocation of the work is added to the
+     * stage while its time is not, as the wall time of the stage already covers it
+     * @param stage the name of the stage the work belongs to
+     * @param work the work
+     * @return the result of the work
+     */
+    public <T> T assist(String stage, Supplier<T> work){
+        if(!enabled){
+            return work.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocatedBytes(threadId);
+        try {
+            return work.get();
+        } finally {
+            long allocatedAfter = allocatedBytes(threadId);
+            if(allocatedBefore >= 0 && allocatedAfter >= 0){
+                stages.computeIfAbsent(stage, k -> new Stage()).allocatedBytes.add(allocatedAfter - allocatedBefore);
+            }
+        }
+    }
+
+    /**
+     * @return the totals of every stage by name
+     */
+    public Map<String, Stage> getStages(){
+        return new TreeMap<>(stages);
+    }
+
+    /**
+     * @return true if this JVM can report allocated bytes
+     */
+    public boolean isAllocationSupported(){
+        return allocation != null;
+    }
+
+    /**
+     * @return a table of the totals of every stage
+     */
+    public String report(){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-20s %8s %12s %12s %14s%n", "stage", "count", "total ms", "mean ms", "allocated MB"));
+        for(Map.Entry<String, Stage> entry : getStages().entrySet()){
+            Stage stage = entry.getValue();
+            double totalMillis = stage.getNanos() / 1e6;
+            report.append(String.format("%-20s %8d %12.1f %12.2f %14s%n",
+                    entry.getKey(),
+                    stage.getCount(),
+                    totalMillis,
+                    stage.getCount() == 0 ? 0.0 : totalMillis / stage.getCount(),
+                    isAllocationSupported() ? String.format("%.1f", stage.getAllocatedBytes() / (1024.0 * 1024.0)) : "n/a"));
+        }
+        return report.toString();
+    }
+
+    private long allocatedBytes(long threadId){
+        return allocation == null ? -1 : allocation.getThreadAllocatedBytes(threadId);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+            if(hotSpotThreads.isThreadAllocatedMemorySupported()){
+                hotSpotThreads.setThreadAllocatedMemoryEnabled(true);
+                return hotSpotThreads;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,438 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.BoundedContext;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.SystemContext;
+import edu.baylor.ecs.prophet.bounded.context.api.BoundedContextApi;
+import edu.baylor.ecs.prophet.bounded.context.api.impl.BoundedContextApiImpl;
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * lightweight http front end for {@link BoundedContextApi}, built on the JDK http server
+ * <p>
+ * POST a system context as json to {@code /boundedContext}, optionally with {@code mode} and {@code cutoff} query
+ * parameters, and the bounded context comes back as json. Identical requests that arrive while one is being analysed
+ * wait for that analysis instead of starting their own, and recent results are kept in a least recently used cache.
+ * Analyses run on virtual threads where the runtime has them and on a fixed pool otherwise. Only a bounded number of
+ * analyses may be in flight, past that the server answers 503 right away. Request bodies larger than the configured
+ * limit are refused with 413 before they are read.
+ * <p>
+ * exchanges are handled on a small dispatcher pool that never waits for an analysis: the response is written when the
+ * analysis completes. Exchanges that find the dispatcher and its bounded queue full are answered with 503 on the
+ * thread of the http server itself.
+ */
+public class BoundedContextServer {
+
+    public static final String PATH = "/boundedContext";
+
+    /**
+     * response header telling whether the result was computed, shared with a concurrent request or cached
+     */
+    public static final String CACHE_HEADER = "X-Bounded-Context-Cache";
+
+    /**
+     * the largest request body accepted by default, in bytes
+     */
+    public static final int DEFAULT_MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    private static final Gson GSON = new Gson();
+
+    // how many apis for cutoffs other than the configured one are kept
+    private static final int CUTOFF_APIS = 16;
+
+    // the options of every analysis, the cutoff can be changed per request
+    private final BoundedContextConfig config;
+
+    private final HttpServer server;
+
+    private final ExecutionBackend backend;
+
+    // analyses admitted and not yet finished, running or waiting for a thread
+    private final Semaphore admitted;
+
+    // reads requests and starts or joins analyses, responses are written by whoever completes the analysis
+    private final ThreadPoolExecutor dispatcher;
+
+    // set while the http server's own thread answers an exchange the dispatcher had no room for
+    private final ThreadLocal<Boolean> shedding = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final int maxBodyBytes;
+
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final ResultCache cache;
+
+    // the api for each cutoff asked for, so state kept by an api outlives a request, least recently used first
+    private final Map<Double, BoundedContextApi> apis = new LinkedHashMap<Double, BoundedContextApi>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Double, BoundedContextApi> eldest) {
+            return size() > CUTOFF_APIS;
+        }
+    };
+
+    /**
+     * @param port the port to listen on, 0 picks a free one
+     * @param config the options used for every analysis
+     * @param threads how many analyses run at once without virtual threads
+     * @param queueCapacity how many analyses past {@code threads} may be in flight before requests are turned away
+     * @param cacheCapacity how many results are cached
+     * @throws IOException if the port cannot be bound
+     */
+    public BoundedContextServer(int port, BoundedContextConfig config, int threads, int queueCapacity, int cacheCapacity) throws IOException {
+        this(port, config, threads, queueCapacity, cacheCapacity, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    /**
+     * @param port the port to listen on, 0 picks a free one
+     * @param config the options used for every analysis
+     * @param threads how many analyses run at once without virtual threads
+     * @param queueCapacity how many analyses past {@code threads} may be in flight before requests are turned away, and
+     *                      with them how many exchanges may wait for a dispatcher thread
+     * @param cacheCapacity how many results are cached
+     * @param maxBodyBytes the largest request body accepted, in bytes
+     * @throws IOException if the port cannot be bound
+     */
+    public BoundedContextServer(int port, BoundedContextConfig config, int threads, int queueCapacity, int cacheCapacity, int maxBodyBytes) throws IOException {
+        this.backend = ExecutionBackend.automatic(threads);
+        this.config = new BoundedContextConfig(config);
+        this.config.setExecutionBackend(backend);
+        int permits = threads + Math.max(0, queueCapacity);
+        this.admitted = new Semaphore(permits);
+        this.dispatcher = new ThreadPoolExecutor(threads + 1, threads + 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(permits + 1), this::shed);
+        this.maxBodyBytes = maxBodyBytes;
+        this.cache = new ResultCache(cacheCapacity);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(dispatcher);
+    }
+
+    public void start(){
+        server.start();
+    }
+
+    /**
+     * stops accepting requests and waits up to the given number of seconds for open exchanges
+     * @param delay seconds to wait
+     */
+    public void stop(int delay){
+        server.stop(delay);
+        backend.close();
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * answers an exchange the dispatcher has no room for with 503, on the calling thread
+     */
+    private void shed(Runnable exchange, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("server stopped");
+        }
+        shedding.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            shedding.set(Boolean.FALSE);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // the exchange is closed here unless a pending analysis answers it later
+        boolean answered = true;
+        try {
+            if (shedding.get()) {
+                send(exchange, 503, "too many pending requests");
+                return;
+            }
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, "only POST is supported");
+                return;
+            }
+
+            Map<String, String> parameters = queryParameters(exchange.getRequestURI().getRawQuery());
+            SimilarityMode mode;
+            try {
+                String value = parameters.get("mode");
+                mode = value == null ? SimilarityMode.WU_PALMER : SimilarityMode.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "unknown mode");
+                return;
+            }
+            double cutoff;
+            try {
+                String value = parameters.get("cutoff");
+                cutoff = value == null ? config.getEntitySimilarityCutoff() : Double.parseDouble(value);
+                if (Double.isNaN(cutoff) || Double.isInfinite(cutoff)) {
+                    throw new NumberFormatException(value);
+                }
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "cutoff is not a number");
+                return;
+            }
+
+            byte[] body = readAll(exchange.getRequestBody(), declaredLength(exchange), maxBodyBytes);
+            if (body == null) {
+                send(exchange, 413, "request body is larger than " + maxBodyBytes + " bytes");
+                return;
+            }
+            String key = requestKey(body, mode, cutoff);
+
+            byte[] result = cache.get(key);
+            if (result != null) {
+                exchange.getResponseHeaders().set(CACHE_HEADER, "hit");
+                sendJson(exchange, result);
+                return;
+            }
+
+            CompletableFuture<byte[]> pending = inFlight.get(key);
+            String source = "coalesced";
+            if (pending == null) {
+                CompletableFuture<byte[]> created = new CompletableFuture<>();
+                pending = inFlight.putIfAbsent(key, created);
+                if (pending == null) {
+                    pending = created;
+                    source = "miss";
+                    if (!submit(key, body, mode, cutoff, created)) {
+                        send(exchange, 503, "too many pending analyses");
+                        return;
+                    }
+                }
+            }
+
+            String answeredAs = source;
+            answered = false;
+            pending.whenComplete((json, failure) -> respond(exchange, answeredAs, json, failure));
+        } finally {
+            if (answered) {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * writes the outcome of an analysis to an exchange that waited for it, and closes the exchange
+     */
+    private static void respond(HttpExchange exchange, String source, byte[] result, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        try {
+            if (cause == null) {
+                exchange.getResponseHeaders().set(CACHE_HEADER, source);
+                sendJson(exchange, result);
+            } else if (cause instanceof RejectedExecutionException) {
+                send(exchange, 503, "too many pending analyses");
+            } else if (cause instanceof JsonParseException) {
+                send(exchange, 400, "malformed system context");
+            } else {
+                System.err.println("analysis failed: " + cause);
+                send(exchange, 500, "analysis failed");
+            }
+        } catch (IOException e) {
+            // the client is gone, there is no one left to answer
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * starts the analysis that completes the given future
+     * @return false if too many analyses are in flight
+     */
+    private boolean submit(String key, byte[] body, SimilarityMode mode, double cutoff, CompletableFuture<byte[]> future){
+        if (!admitted.tryAcquire()) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(new RejectedExecutionException("too many pending analyses"));
+            return false;
+        }
+        CompletableFuture<SystemContext> parsed = new CompletableFuture<>();
+        try {
+            SystemContext systemContext = GSON.fromJson(new String(body, StandardCharsets.UTF_8), SystemContext.class);
+            if (systemContext == null) {
+                throw new JsonParseException("empty body");
+            }
+            parsed.complete(systemContext);
+        } catch (JsonParseException e) {
+            parsed.completeExceptionally(e);
+        }
+        BoundedContextApi api = api(cutoff);
+        parsed.thenCompose(systemContext -> api.getBoundedContextAsync(systemContext, mode))
+                .thenApply(boundedContext -> GSON.toJson(boundedContext).getBytes(StandardCharsets.UTF_8))
+                .whenComplete((json, failure) -> {
+                    admitted.release();
+                    if (failure == null) {
+                        // cache before leaving the in flight table, so a new request finds one or the other
+                        cache.put(key, json);
+                        inFlight.remove(key, future);
+                        future.complete(json);
+                    } else {
+                        inFlight.remove(key, future);
+                        future.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * @return the api analysing with the given cutoff, created the first time it is asked for
+     */
+    private BoundedContextApi api(double cutoff){
+        synchronized (apis) {
+            return apis.computeIfAbsent(cutoff, c -> {
+                BoundedContextConfig cutoffConfig = new BoundedContextConfig(config);
+                cutoffConfig.setEntitySimilarityCutoff(c);
+                return new BoundedContextApiImpl(cutoffConfig);
+            });
+        }
+    }
+
+    /**
+     * @return the SHA-256 of the request body and the options that change the result
+     */
+    static String requestKey(byte[] body, SimilarityMode mode, double cutoff){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body);
+            digest.update((byte) 0);
+            digest.update((mode.name() + '\0' + cutoff).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static Map<String, String> queryParameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int split = pair.indexOf('=');
+                if (split > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, split), "UTF-8"),
+                            URLDecoder.decode(pair.substring(split + 1), "UTF-8"));
+                }
+            }
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the content length the client announced, -1 if it did not
+     */
+    private static long declaredLength(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the whole body, null if it is longer than the limit
+     */
+    private static byte[] readAll(InputStream in, long declaredLength, int limit) throws IOException {
+        if (declaredLength > limit) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(declaredLength > 0 ? (int) declaredLength : 8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > limit) {
+                return null;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sendJson(HttpExchange exchange, byte[] json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * starts a server, options are {@code --port}, {@code --threads}, {@code --queue}, {@code --cache} and
+     * {@code --max-body}
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        int cacheSize = 128;
+        int maxBody = DEFAULT_MAX_BODY_BYTES;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = intOption(args[i], args[i + 1]); break;
+                case "--threads": threads = intOption(args[i], args[i + 1]); break;
+                case "--queue": queue = intOption(args[i], args[i + 1]); break;
+                case "--cache": cacheSize = intOption(args[i], args[i + 1]); break;
+                case "--max-body": maxBody = intOption(args[i], args[i + 1]); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        BoundedContextServer server = new BoundedContextServer(port, new BoundedContextConfig(), threads, queue, cacheSize, maxBody);
+        server.start();
+        System.err.println("listening on port " + server.getPort() + PATH + " using " + server.backend.getName() + " threads");
+    }
+
+    private static int intOption(String option, String value){
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " expects a whole number, got " + value);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * small least recently used cache of serialized results
+ * <p>
+ * results are kept as bytes so every hit is its own copy
+ */
+class ResultCache {
+
+    private final Map<String, byte[]> entries;
+
+    /**
+     * @param capacity how many results to keep, 0 keeps none
+     */
+    ResultCache(int capacity){
+        if(capacity < 0){
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        // access order, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized byte[] get(String key){
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, byte[] value){
+        entries.put(key, value);
+    }
+
+    synchronized int size(){
+        return entries.size();
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils;
+
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.profiling.StageProfiler;
+
+import java.nio.file.Path;
+
+/**
+ * options for creating a bounded context
+ */
+public class BoundedContextConfig {
+
+    /**
+     * entities whose names are more similar than this are merged unless another cutoff is set
+     */
+    public static final double DEFAULT_ENTITY_SIMILARITY_CUTOFF = 0.9;
+
+    /**
+     * bytes of results kept in the result cache directory unless another limit is set
+     */
+    public static final long DEFAULT_RESULT_CACHE_DISK_BYTES = 256L << 20;
+
+    // entities whose names are more similar than this are merged
+    private double entitySimilarityCutoff = DEFAULT_ENTITY_SIMILARITY_CUTOFF;
+
+    // how modules are combined
+    private MergeStrategy mergeStrategy = MergeStrategy.PAIRWISE;
+
+    // estimated bytes of pending modules to keep on the heap, 0 for no limit
+    private long memoryBudget = 0;
+
+    // best candidates kept per field when aligning fields, 0 for all of them
+    private int candidateLimit = 0;
+
+    // where modules over the memory budget are written, null for the system temp directory
+    private Path spillDirectory = null;
+
+    // sort modules, entities and fields so every run on the same input gives the same result
+    private boolean deterministic = false;
+
+    // collapse entities copied verbatim between modules before merging
+    private boolean deduplicating = true;
+
+    // records the time and allocation of each stage of the engine
+    private StageProfiler profiler = StageProfiler.disabled();
+
+    // bytes of results BoundedContextApiImpl keeps in memory, 0 for no cache
+    private long resultCacheBytes = 0;
+
+    // where BoundedContextApiImpl also keeps results, null for memory only
+    private Path resultCacheDirectory = null;
+
+    // bytes of results kept in the result cache directory, the oldest are removed past it
+    private long resultCacheDiskBytes = DEFAULT_RESULT_CACHE_DISK_BYTES;
+
+    // runs asynchronous analyses
+    private ExecutionBackend executionBackend = ExecutionBackend.shared();
+
+    public BoundedContextConfig(){
+    }
+
+    /**
+     * copies a config
+     * @param other the config to copy
+     */
+    public BoundedContextConfig(BoundedContextConfig other){
+        this.entitySimilarityCutoff = other.entitySimilarityCutoff;
+        this.mergeStrategy = other.mergeStrategy;
+        this.memoryBudget = other.memoryBudget;
+        this.candidateLimit = other.candidateLimit;
+        this.spillDirectory = other.spillDirectory;
+        this.deterministic = other.deterministic;
+        this.deduplicating = other.deduplicating;
+        this.profiler = other.profiler;
+        this.executionBackend = other.executionBackend;
+        this.resultCacheBytes = other.resultCacheBytes;
+        this.resultCacheDirectory = other.resultCacheDirectory;
+        this.resultCacheDiskBytes = other.resultCacheDiskBytes;
+    }
+
+    public double getEntitySimilarityCutoff() {
+        return entitySimilarityCutoff;
+    }
+
+    /**
+     * @param entitySimilarityCutoff entities whose names are more similar than this are merged
+     */
+    public void setEntitySimilarityCutoff(double entitySimilarityCutoff) {
+        this.entitySimilarityCutoff = entitySimilarityCutoff;
+    }
+
+    public MergeStrategy getMergeStrategy() {
+        return mergeStrategy;
+    }
+
+    public void setMergeStrategy(MergeStrategy mergeStrategy) {
+        this.mergeStrategy = mergeStrategy;
+    }
+
+    /**
+     * @return true if the engine should keep within {@link #getMemoryBudget()}
+     */
+    public boolean isMemoryBounded() {
+        return memoryBudget > 0;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * bounds the memory used by the pairwise strategy
+     * <p>
+     * modules are cloned one at a time, pending modules over the budget are spilled to disk and only the best
+     * candidate is kept for each entity. The result is the same as without a budget.
+     * @param memoryBudget the estimated bytes of pending modules to keep on the heap, 0 for no limit
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getCandidateLimit() {
+        return candidateLimit;
+    }
+
+    /**
+     * limits how many candidates are kept for each field when aligning the fields of two entities
+     * <p>
+     * the alignment is the same as without a limit as long as no field needs more than this many candidates
+     * @param candidateLimit the number of candidates, 0 for all of them
+     */
+    public void setCandidateLimit(int candidateLimit) {
+        this.candidateLimit = candidateLimit;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * makes the result depend only on the content of the system and not on the iteration order of its sets
+     * <p>
+     * modules are merged in name order and entities and fields are kept sorted by name, so similarity ties are always
+     * broken the same way. Costs a sort of every module that is merged.
+     * @param deterministic true for reproducible results
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicating;
+    }
+
+    /**
+     * collapses entities that are copied verbatim between modules before any similarity work
+     * <p>
+     * the pairwise strategy gives the same result either way, the global strategy leaves the copies out of the group
+     * the kept copy falls in
+     * @param deduplicating false to merge every copy through the similarity machinery
+     */
+    public void setDeduplicating(boolean deduplicating) {
+        this.deduplicating = deduplicating;
+    }
+
+    public StageProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @param profiler records the stages of the engine, shared by every copy of this config
+     */
+    public void setProfiler(StageProfiler profiler) {
+        this.profiler = profiler == null ? StageProfiler.disabled() : profiler;
+    }
+
+    /**
+     * @return true if {@link edu.baylor.ecs.prophet.bounded.context.api.impl.BoundedContextApiImpl} caches results
+     */
+    public boolean isResultCached() {
+        return resultCacheBytes > 0 || resultCacheDirectory != null;
+    }
+
+    public long getResultCacheBytes() {
+        return resultCacheBytes;
+    }
+
+    /**
+     * caches results by the content of the system, the mode and these options
+     * <p>
+     * results are kept as json, least recently used ones are dropped first
+     * @param resultCacheBytes the bytes of json kept in memory, 0 for no cache
+     */
+    public void setResultCacheBytes(long resultCacheBytes) {
+        this.resultCacheBytes = resultCacheBytes;
+    }
+
+    public Path getResultCacheDirectory() {
+        return resultCacheDirectory;
+    }
+
+    /**
+     * @param resultCacheDirectory where results are also written so they outlive the memory cache and the process,
+     *                             null for memory only. The least recently used results are removed from it once it
+     *                             holds more than {@link #getResultCacheDiskBytes()}
+     */
+    public void setResultCacheDirectory(Path resultCacheDirectory) {
+        this.resultCacheDirectory = resultCacheDirectory;
+    }
+
+    public long getResultCacheDiskBytes() {
+        return resultCacheDiskBytes;
+    }
+
+    /**
+     * @param resultCacheDiskBytes the bytes of results kept in the result cache directory
+     */
+    public void setResultCacheDiskBytes(long resultCacheDiskBytes) {
+        this.resultCacheDiskBytes = resultCacheDiskBytes;
+    }
+
+    public ExecutionBackend getExecutionBackend() {
+        return executionBackend;
+    }
+
+    /**
+     * @param executionBackend runs asynchronous analyses, null for the shared backend. The caller stays responsible
+     *                         for closing it
+     */
+    public void setExecutionBackend(ExecutionBackend executionBackend) {
+        this.executionBackend = executionBackend == null ? ExecutionBackend.shared() : executionBackend;
+    }
+
+    @Override
+    public String toString() {
+        return "entitySimilarityCutoff=" + entitySimilarityCutoff
+                + ",mergeStrategy=" + mergeStrategy
+                + ",memoryBudget=" + memoryBudget
+                + ",candidateLimit=" + candidateLimit
+                + ",deterministic=" + deterministic
+                + ",deduplicating=" + deduplicating;
+    }
+}
@@ -9,6 +9,7 @@ package edu.baylor.ecs.prophet.bounded.context.utils;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,7 +22,17 @@ public interface BoundedContextUtils {
      * @param systemContext the system context
      * @return the bounded context
      */
-    BoundedContext createBoundedContext(SystemContext systemContext, boolean useWuPalmer);
+    default BoundedContext createBoundedContext(SystemContext systemContext, boolean useWuPalmer){
+        return createBoundedContext(systemContext, SimilarityMode.of(useWuPalmer));
+    }
+
+    /**
+     * creates bounded context from a system context
+     * @param systemContext the system context
+     * @param mode how names are compared
+     * @return the bounded context
+     */
+    BoundedContext createBoundedContext(SystemContext systemContext, SimilarityMode mode);
 
     /**
      * merges two entities together using the field mapping
@@ -32,13 +43,35 @@ public interface BoundedContextUtils {
      */
     Entity mergeEntities(Entity one, Entity two, Map<Field, Field> fieldMapping);
 
+    /**
+     * merges a group of entities together in one pass
+     * <p>
+     * gives the same result as merging the entities two at a time into the first, except that every entity is
+     * aligned against the first entity only
+     * @param entities the entities to merge, the first one names the result
+     * @param fieldMappings for each entity after the first, the mapping from the fields of the first entity to its fields
+     * @return the newly created merged entity
+     */
+    Entity mergeEntities(List<Entity> entities, List<Map<Field, Field>> fieldMappings);
+
+    /**
+     * merges two modules into one module
+     * @param one one of the modules
+     * @param two the other module
+     * @return a new module comprised of the other two
+     */
+    default Module mergeModules(Module one, Module two, boolean useWuPalmer){
+        return mergeModules(one, two, SimilarityMode.of(useWuPalmer));
+    }
+
     /**
      * merges two modules into one module
      * @param one one of the modules
      * @param two the other module
+     * @param mode how names are compared
      * @return a new module comprised of the other two
      */
-    Module mergeModules(Module one, Module two, boolean useWuPalmer);
+    Module mergeModules(Module one, Module two, SimilarityMode mode);
 
     /**
      * merges two fields into one field
@@ -0,0 +1,29 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils;
+
+/**
+ * how the modules of a system are combined into one bounded context
+ */
+public enum MergeStrategy {
+
+    /**
+     * modules are merged two at a time until one is left
+     * <p>
+     * an entity of the first module of a merge that matches nothing in the second gets the name of the first module
+     * ("module::") prefaced to its full name
+     */
+    PAIRWISE,
+
+    /**
+     * entities of all modules are clustered at once by similarity and each cluster is merged once
+     * <p>
+     * unlike {@link #PAIRWISE}, an entity that is similar to nothing keeps its full name without a module preface.
+     * Pairwise merging prefaces the module that happens to be first in the merge it is unmatched in, which is not
+     * necessarily the module the entity came from, so there is no equivalent preface here.
+     */
+    GLOBAL
+}
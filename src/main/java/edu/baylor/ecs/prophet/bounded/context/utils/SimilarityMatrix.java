@@ -0,0 +1,57 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils;
+
+/**
+ * matrix of similarity scores between the rows (e.g. entities of one module) and the columns (e.g. entities of another)
+ * <p>
+ * scores are stored as primitive doubles. A cell scoring 0 is never a candidate, so every implementation selects the
+ * same columns for the same scores. When selecting the best columns of a row, higher scores come first and equal
+ * scores are ordered by ascending column index so that ties are resolved the same way every time.
+ */
+public interface SimilarityMatrix {
+
+    /**
+     * @return the number of rows
+     */
+    int rows();
+
+    /**
+     * @return the number of columns
+     */
+    int columns();
+
+    /**
+     * gets the similarity stored for a cell
+     * @param row the row
+     * @param column the column
+     * @return the similarity, 0 if none was stored
+     */
+    double get(int row, int column);
+
+    /**
+     * stores the similarity for a cell
+     * @param row the row
+     * @param column the column
+     * @param similarity the similarity
+     */
+    void set(int row, int column, double similarity);
+
+    /**
+     * finds the best column for a row
+     * @param row the row
+     * @return the column with the highest non zero similarity (lowest index on ties), -1 if the row has no candidates
+     */
+    int best(int row);
+
+    /**
+     * finds the k best columns for a row
+     * @param row the row
+     * @param k the maximum number of columns to return
+     * @return the columns with a non zero similarity, ordered by descending similarity and then ascending column index
+     */
+    int[] topK(int row, int k);
+}
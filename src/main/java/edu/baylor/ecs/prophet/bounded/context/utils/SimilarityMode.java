@@ -0,0 +1,41 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils;
+
+/**
+ * the ways two names can be compared
+ */
+public enum SimilarityMode {
+
+    /**
+     * case insensitive exact match
+     */
+    BASIC,
+
+    /**
+     * Wu Palmer similarity over WordNet
+     */
+    WU_PALMER,
+
+    /**
+     * cosine similarity of word vectors loaded from a local file
+     */
+    EMBEDDING,
+
+    /**
+     * Jaro Winkler and word overlap of the characters of the names, no dictionary needed
+     */
+    LEXICAL;
+
+    /**
+     * maps the old boolean switch onto a mode
+     * @param useWuPalmer whether Wu Palmer should be used
+     * @return {@link #WU_PALMER} or {@link #BASIC}
+     */
+    public static SimilarityMode of(boolean useWuPalmer){
+        return useWuPalmer ? WU_PALMER : BASIC;
+    }
+}
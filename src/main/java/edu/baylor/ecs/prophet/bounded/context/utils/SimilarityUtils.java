@@ -23,7 +23,19 @@ public interface SimilarityUtils {
      * @param fieldTwo the second field to compare
      * @return the similarity of the fields
      */
-    double localFieldSimilarity(Field fieldOne, Field fieldTwo, boolean useWuPalmer);
+    default double localFieldSimilarity(Field fieldOne, Field fieldTwo, boolean useWuPalmer){
+        return localFieldSimilarity(fieldOne, fieldTwo, SimilarityMode.of(useWuPalmer));
+    }
+
+    /**
+     * finds the similarity between two fields
+     *
+     * @param fieldOne the first field to compare
+     * @param fieldTwo the second field to compare
+     * @param mode how names are compared
+     * @return the similarity of the fields
+     */
+    double localFieldSimilarity(Field fieldOne, Field fieldTwo, SimilarityMode mode);
 
     /**
      * find the similarity of two entities
@@ -32,7 +44,19 @@ public interface SimilarityUtils {
      * @param entityTwo second entity to find similarity of
      * @return tuple of similarity of the entities as well as the mapping between their fields
      */
-    ImmutablePair<Double, Map<Field, Field>> globalFieldSimilarity(Entity entityOne, Entity entityTwo, boolean useWuPalmer);
+    default ImmutablePair<Double, Map<Field, Field>> globalFieldSimilarity(Entity entityOne, Entity entityTwo, boolean useWuPalmer){
+        return globalFieldSimilarity(entityOne, entityTwo, SimilarityMode.of(useWuPalmer));
+    }
+
+    /**
+     * find the similarity of two entities
+     *
+     * @param entityOne first entity to find similarity of
+     * @param entityTwo second entity to find similarity of
+     * @param mode how names are compared
+     * @return tuple of similarity of the entities as well as the mapping between their fields
+     */
+    ImmutablePair<Double, Map<Field, Field>> globalFieldSimilarity(Entity entityOne, Entity entityTwo, SimilarityMode mode);
 
     /**
      * finds the similalrity of two names (i.e. nouns)
@@ -41,5 +65,17 @@ public interface SimilarityUtils {
      * @param two the second name to compare
      * @return the Wu Palmer similarity of these names
      */
-    double nameSimilarity(String one, String two, boolean useWuPalmer);
+    default double nameSimilarity(String one, String two, boolean useWuPalmer){
+        return nameSimilarity(one, two, SimilarityMode.of(useWuPalmer));
+    }
+
+    /**
+     * finds the similalrity of two names (i.e. nouns)
+     *
+     * @param one the first name to comapare
+     * @param two the second name to compare
+     * @param mode how the names are compared
+     * @return the similarity of these names
+     */
+    double nameSimilarity(String one, String two, SimilarityMode mode);
 }
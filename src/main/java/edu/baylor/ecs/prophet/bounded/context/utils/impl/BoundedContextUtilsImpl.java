@@ -6,15 +6,26 @@
 package edu.baylor.ecs.prophet.bounded.context.utils.impl;
 
 
+import com.google.gson.Gson;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
 
 import edu.baylor.ecs.prophet.bounded.context.exception.FieldMappingException;
+import edu.baylor.ecs.prophet.bounded.context.profiling.StageProfiler;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
 import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextUtils;
-import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import edu.baylor.ecs.prophet.bounded.context.utils.MergeStrategy;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -23,10 +34,51 @@ import java.util.stream.Collectors;
  */
 public class BoundedContextUtilsImpl implements BoundedContextUtils {
 
+    /**
+     * @deprecated the cutoff is set per instance, see {@link BoundedContextConfig#setEntitySimilarityCutoff}
+     */
+    @Deprecated
+    public static final double ENTITY_SIMILARITY_CUTOFF = BoundedContextConfig.DEFAULT_ENTITY_SIMILARITY_CUTOFF;
+
     // tools used for finding similarities
-    private SimilarityUtils similarityUtils = new SimilarityUtilsImpl();
+    private final SimilarityUtilsImpl similarityUtils;
+
+    // the options of this instance
+    private final BoundedContextConfig config;
+
+    // the modules that held copies of each kept entity during the last run
+    private Map<String, List<String>> provenance = new HashMap<>();
+
+    // the references between entities during createBoundedContext, null otherwise
+    private ReferenceIndex references = null;
+
+    // the original full names of what sanitizing renamed during the last run
+    private Map<String, String> originalNames = new HashMap<>();
+
+
+    // the module name the merged entities of the global strategy are keyed under in the reference index
+    private static final String GLOBAL_RESULT = "";
+
+    // canonical orders of deterministic mode, names first and the full content to break ties
+    private static final Gson ANNOTATION_JSON = new Gson();
+
+    private static final Comparator<Field> FIELD_ORDER = Comparator.comparing((Field f) -> f.getName().getName())
+            .thenComparing(Field::getType, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Field::isReference)
+            .thenComparing(Field::isCollection)
+            .thenComparing(f -> f.getName().getFullName(), Comparator.nullsFirst(Comparator.naturalOrder()));
 
-    public static double ENTITY_SIMILARITY_CUTOFF = 0.9;
+    public BoundedContextUtilsImpl(){
+        this(new BoundedContextConfig());
+    }
+
+    /**
+     * @param config the options to create bounded contexts with, copied so later changes have no effect
+     */
+    public BoundedContextUtilsImpl(BoundedContextConfig config){
+        this.config = new BoundedContextConfig(config);
+        this.similarityUtils = new SimilarityUtilsImpl(this.config);
+    }
 
     /**
      * creates a bounded context for the system context
@@ -34,28 +86,663 @@ public class BoundedContextUtilsImpl implements BoundedContextUtils {
      * @return the bounded context
      */
     @Override
-    public BoundedContext createBoundedContext(SystemContext systemContext, boolean useWuPalmer) {
+    public BoundedContext createBoundedContext(SystemContext systemContext, SimilarityMode mode) {
+        references = new ReferenceIndex();
+        try {
+            return create(systemContext, mode);
+        } finally {
+            references = null;
+        }
+    }
+
+    private BoundedContext create(SystemContext systemContext, SimilarityMode mode) {
+
+        StageProfiler profiler = config.getProfiler();
+
+        originalNames = new ConcurrentHashMap<>();
+
+        // collapses entities that are copied verbatim between modules before any similarity work
+        EntityDeduplicator entityDeduplicator = new EntityDeduplicator();
 
-        // sanitize all of the name in the systemContext
-        NameStripper.sanitizeSystemContext(systemContext);
+        if (config.isMemoryBounded() && config.getMergeStrategy() == MergeStrategy.PAIRWISE) {
+            return createBoundedContextWithinBudget(systemContext, entityDeduplicator, mode);
+        }
+
+        // copy the modules with sanitized names, the system given is left as it is
+        List<Module> modules = new ArrayList<>(modulesInOrder(systemContext));
+        List<String> moduleIds = moduleIds(modules);
+        List<Module> clones = profiler.time("sanitize", () -> {
+            List<Module> copies = sanitizedCopies(modules, moduleIds);
+            similarityUtils.startRun(copies);
+            return copies;
+        });
+
+        // removed copies keep their keys, so references to them follow the entity they are merged into
+        clones.forEach(references::add);
+
+        if (config.getMergeStrategy() == MergeStrategy.GLOBAL) {
+            profiler.run("deduplicate", () -> deduplicate(entityDeduplicator, clones, moduleIds));
+            for (int i = 0; i < clones.size(); i++) {
+                for (EntityDeduplicator.Copy copy : copiesOf(entityDeduplicator, moduleIds.get(i))) {
+                    references.merged(copy.getKeptKey(), key(clones.get(i), copy.getEntity()));
+                }
+            }
+            return new BoundedContext(systemContext.getSystemName(), clones.isEmpty() ? null : finish(GLOBAL_RESULT, profiler.time("cluster", () -> clusterEntities(clones, mode))));
+        }
+
+        // the stack merges the last module first, so copies are looked for in that order
+        List<Module> mergeOrder = new ArrayList<>(clones);
+        List<String> mergeOrderIds = new ArrayList<>(moduleIds);
+        Collections.reverse(mergeOrder);
+        Collections.reverse(mergeOrderIds);
+        profiler.run("deduplicate", () -> deduplicate(entityDeduplicator, mergeOrder, mergeOrderIds));
 
-        Set<Module> modules = systemContext.getModules();
         Stack<Module> moduleStack = new Stack<>();
-        for (Module m: modules) {
-            moduleStack.add(m.clone());
+        moduleStack.addAll(clones);
+        // the id of each module on the stack, null for merged modules
+        Stack<String> idStack = new Stack<>();
+        idStack.addAll(moduleIds);
+        profiler.run("merge", () -> {
+            while(moduleStack.size() > 1) {
+                Module m1 = moduleStack.pop();
+                idStack.pop();
+                Module m2 = moduleStack.pop();
+                Module result = inOrder(mergeModules(m1, m2, copiesOf(entityDeduplicator, idStack.pop()), mode));
+                if (result.getEntities().size() > 0) {
+                    moduleStack.push(result);
+                    idStack.push(null);
+                }
+            }
+        });
+
+        return new BoundedContext(systemContext.getSystemName(), moduleStack.size() > 0 ? finish(moduleStack.get(0)) : null);
+
+    }
+
+    /**
+     * removes copied entities from the modules when the config asks for it, and records where they came from
+     * @param modules the sanitized modules, in the order the kept copy is chosen by
+     * @param moduleIds the id of each module
+     */
+    private void deduplicate(EntityDeduplicator entityDeduplicator, List<Module> modules, List<String> moduleIds) {
+        provenance = config.isDeduplicating() ? entityDeduplicator.deduplicate(modules, moduleIds) : new HashMap<>();
+    }
+
+    /**
+     * @param moduleId the id of a module, null for a merged one
+     * @return the copies removed from the module
+     */
+    private static List<EntityDeduplicator.Copy> copiesOf(EntityDeduplicator entityDeduplicator, String moduleId) {
+        return moduleId == null ? Collections.emptyList() : entityDeduplicator.getCopies().getOrDefault(moduleId, Collections.emptyList());
+    }
+
+    /**
+     * merges the modules pairwise like {@link #createBoundedContext} but keeps pending modules within the memory budget
+     * <p>
+     * copies are looked for in merge order on throwaway copies of the modules first. The modules are then copied and
+     * their copied entities removed one at a time, and pending modules that do not fit in the budget wait on disk
+     * @param systemContext the system
+     * @param entityDeduplicator removes copies of entities
+     * @param mode how names are compared
+     * @return the bounded context
+     */
+    private BoundedContext createBoundedContextWithinBudget(SystemContext systemContext, EntityDeduplicator entityDeduplicator, SimilarityMode mode) {
+        try (ModuleSpillStore moduleStack = new ModuleSpillStore(config.getMemoryBudget(), config.getSpillDirectory())) {
+            StageProfiler profiler = config.getProfiler();
+            // within a budget fields are encoded as they are compared rather than kept for the run
+            similarityUtils.startRun(Collections.emptyList());
+            List<Module> modules = new ArrayList<>(modulesInOrder(systemContext));
+            List<String> moduleIds = moduleIds(modules);
+            if (config.isDeduplicating()) {
+                // the stack merges the last module first
+                profiler.run("deduplicate", () -> {
+                    for (int i = modules.size() - 1; i >= 0; i--) {
+                        entityDeduplicator.deduplicate(NameStripper.sanitizedCopy(modules.get(i), moduleIds.get(i), originalNames), moduleIds.get(i));
+                    }
+                });
+            }
+            // the id of each module on the stack, null for merged modules
+            Stack<String> idStack = new Stack<>();
+            for (int i = 0; i < modules.size(); i++) {
+                Module m = modules.get(i);
+                String moduleId = moduleIds.get(i);
+                Module clone = profiler.time("sanitize", () -> inOrder(NameStripper.sanitizedCopy(m, moduleId, originalNames)));
+                references.add(clone);
+                profiler.run("deduplicate", () -> entityDeduplicator.removeCopies(clone, moduleId));
+                pushOrSpill(moduleStack, clone);
+                idStack.push(moduleId);
+            }
+            provenance = entityDeduplicator.getProvenance();
+
+            profiler.run("merge", () -> {
+                while (moduleStack.size() > 1) {
+                    // pushed modules are in order already, and spilling keeps the order
+                    Module m1 = popOrLoad(moduleStack);
+                    idStack.pop();
+                    Module m2 = popOrLoad(moduleStack);
+                    Module result = inOrder(mergeModules(m1, m2, copiesOf(entityDeduplicator, idStack.pop()), mode));
+                    if (result.getEntities().size() > 0) {
+                        pushOrSpill(moduleStack, result);
+                        idStack.push(null);
+                    }
+                }
+            });
+
+            return new BoundedContext(systemContext.getSystemName(), moduleStack.size() > 0 ? finish(popOrLoad(moduleStack)) : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not spill modules to disk", e);
+        }
+    }
+
+    /**
+     * finishes the module the pairwise strategy merged everything into
+     * @see #finish(String, Set)
+     */
+    private Set<Entity> finish(Module merged) {
+        return finish(merged.getName().getName(), merged.getEntities());
+    }
+
+    /**
+     * points references at the entities their targets were merged into and puts the entities in their final order
+     * @param module the name the entities are keyed under in the reference index
+     * @param entities the merged entities
+     * @return the entities of the bounded context
+     */
+    private Set<Entity> finish(String module, Set<Entity> entities) {
+        if (entities == null) {
+            return null;
+        }
+        // rewritten entities hash differently, so the set is rebuilt
+        if (config.getProfiler().time("references", () -> references.rewrite(module, entities)) > 0 && !config.isDeterministic()) {
+            return new HashSet<>(entities);
+        }
+        return entitiesInOrder(entities);
+    }
+
+    /**
+     * names each module by its original full name, which stays apart where sanitized names collide
+     * @param modules the modules of the system
+     * @return the id of each module, in the order given
+     */
+    private static List<String> moduleIds(List<Module> modules) {
+        List<String> ids = new ArrayList<>(modules.size());
+        Set<String> used = new HashSet<>();
+        for (Module m : modules) {
+            String id = m.getName().getName();
+            for (int n = 2; !used.add(id); n++) {
+                id = m.getName().getName() + "#" + n;
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * copies the modules with sanitized names and puts them in order, in parallel on the execution backend of the config
+     * <p>
+     * the calling thread copies modules too and only waits for copies another thread has started, so a backend whose
+     * threads are all busy, possibly with this very analysis, cannot hold it up
+     * @param modules the modules, they are not changed
+     * @param moduleIds the id of each module, see {@link #moduleIds}
+     * @return the copies, in the order of the modules given
+     */
+    private List<Module> sanitizedCopies(List<Module> modules, List<String> moduleIds) {
+        int count = modules.size();
+        List<CompletableFuture<Module>> copies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            copies.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        Runnable copyRemaining = () -> {
+            for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                try {
+                    copies.get(i).complete(inOrder(NameStripper.sanitizedCopy(modules.get(i), moduleIds.get(i), originalNames)));
+                } catch (RuntimeException e) {
+                    copies.get(i).completeExceptionally(e);
+                }
+            }
+        };
+        StageProfiler profiler = config.getProfiler();
+        for (int helper = 1; helper < Math.min(count, Runtime.getRuntime().availableProcessors()); helper++) {
+            CompletableFuture<Object> assisted = config.getExecutionBackend().submit(() -> profiler.assist("sanitize", () -> {
+                copyRemaining.run();
+                return null;
+            }));
+            if (assisted.isCompletedExceptionally()) {
+                // a closed backend fails the task straight away and leaves the work to this thread
+                break;
+            }
         }
-//        moduleStack.addAll(modules);
-        while(moduleStack.size() > 1) {
-            Module m1 = moduleStack.pop();
-            Module m2 = moduleStack.pop();
-            Module result = mergeModules(m1, m2, useWuPalmer);
-            if (result.getEntities().size() > 0) {
-                moduleStack.push(result);
+        copyRemaining.run();
+
+        List<Module> result = new ArrayList<>(count);
+        for (CompletableFuture<Module> copy : copies) {
+            try {
+                result.add(copy.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
             }
         }
+        return result;
+    }
 
-        return new BoundedContext(systemContext.getSystemName(), moduleStack.size() > 0 ? moduleStack.get(0).getEntities() : null);
+    /**
+     * @return the modules of the system, sorted by name in deterministic mode
+     */
+    private Collection<Module> modulesInOrder(SystemContext systemContext) {
+        if (!config.isDeterministic()) {
+            return systemContext.getModules();
+        }
+        return sortedByName(systemContext.getModules(), m -> NameStripper.getBasicName(m.getName().getName()), ContentHash::of);
+    }
 
+    /**
+     * in deterministic mode puts the entities of the module and their fields in canonical order
+     * @param module the module, its entities are changed
+     * @return the module
+     */
+    private Module inOrder(Module module) {
+        if (config.isDeterministic()) {
+            module.setEntities(entitiesInOrder(module.getEntities()));
+        }
+        return module;
+    }
+
+    /**
+     * in deterministic mode sorts the entities by name, the fields of each entity by name, type and flags and the
+     * annotations of each field by their json
+     * <p>
+     * entities whose fields are in order already, like those a merge carries over unchanged, are left alone
+     * @param entities the entities, their fields are changed
+     * @return the entities in canonical order
+     */
+    private Set<Entity> entitiesInOrder(Set<Entity> entities) {
+        if (!config.isDeterministic()) {
+            return entities;
+        }
+        for (Entity entity : entities) {
+            if (!isInOrder(entity.getFields())) {
+                for (Field field : entity.getFields()) {
+                    if (field.getAnnotations() != null && field.getAnnotations().size() > 1) {
+                        field.setAnnotations(new LinkedHashSet<>(sortedByName(field.getAnnotations(), ANNOTATION_JSON::toJson, a -> "")));
+                    }
+                }
+                List<Field> fields = new ArrayList<>(entity.getFields());
+                fields.sort(FIELD_ORDER);
+                entity.setFields(new LinkedHashSet<>(fields));
+            }
+        }
+        return new LinkedHashSet<>(sortedByName(entities, e -> e.getEntityName().getName(), EntityDeduplicator::canonicalKey));
+    }
+
+    /**
+     * @return true if the fields iterate in {@link #FIELD_ORDER} and will keep doing so, and the annotations of each
+     * keep the order they were put in
+     */
+    private static boolean isInOrder(Set<Field> fields) {
+        if (!(fields instanceof LinkedHashSet)) {
+            return false;
+        }
+        Field previous = null;
+        for (Field field : fields) {
+            if (previous != null && FIELD_ORDER.compare(previous, field) > 0) {
+                return false;
+            }
+            if (field.getAnnotations() != null && field.getAnnotations().size() > 1 && !(field.getAnnotations() instanceof LinkedHashSet)) {
+                return false;
+            }
+            previous = field;
+        }
+        return true;
+    }
+
+    /**
+     * sorts by name and breaks ties with a second key, each key is computed at most once per element and the second
+     * only for elements whose names tie
+     * @param items the elements
+     * @param name the name of an element
+     * @param tieBreak the key that orders elements with the same name
+     * @return the elements in order
+     */
+    private static <T> List<T> sortedByName(Collection<T> items, Function<T, String> name, Function<T, String> tieBreak) {
+        List<SortKey<T>> keys = new ArrayList<>(items.size());
+        for (T item : items) {
+            keys.add(new SortKey<>(item, name.apply(item), tieBreak));
+        }
+        Collections.sort(keys);
+        List<T> sorted = new ArrayList<>(keys.size());
+        for (SortKey<T> key : keys) {
+            sorted.add(key.item);
+        }
+        return sorted;
+    }
+
+    /**
+     * an element with its name and, once needed, the key that breaks ties between equal names
+     */
+    private static final class SortKey<T> implements Comparable<SortKey<T>> {
+
+        private final T item;
+
+        private final String name;
+
+        private final Function<T, String> tieBreak;
+
+        private String tie;
+
+        SortKey(T item, String name, Function<T, String> tieBreak) {
+            this.item = item;
+            this.name = name;
+            this.tieBreak = tieBreak;
+        }
+
+        private String tie() {
+            if (tie == null) {
+                tie = tieBreak.apply(item);
+            }
+            return tie;
+        }
+
+        @Override
+        public int compareTo(SortKey<T> other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : tie().compareTo(other.tie());
+        }
+    }
+
+    private static void pushOrSpill(ModuleSpillStore moduleStack, Module module) {
+        try {
+            moduleStack.push(module);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not spill module to disk", e);
+        }
+    }
+
+    private static Module popOrLoad(ModuleSpillStore moduleStack) {
+        try {
+            return moduleStack.pop();
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read spilled module from disk", e);
+        }
+    }
+
+    /**
+     * merges the entities of all modules at once
+     * <p>
+     * every pair of entities from different modules whose names are similar enough is joined, and each connected
+     * group is merged in one go. Modules and entities are visited in name order, so the result does not depend on the
+     * iteration order of the module and entity sets.
+     * @param modules the modules to merge
+     * @param mode how names are compared
+     * @return the merged entities
+     */
+    private Set<Entity> clusterEntities(List<Module> modules, SimilarityMode mode) {
+
+        FlatEntities flat = new FlatEntities(modules);
+        List<Entity> entities = flat.entities;
+        List<String> names = flat.names;
+        int[] moduleOf = flat.moduleOf;
+
+        // join every pair of similar entities from different modules, remembering the pairs that joined two groups
+        DisjointSets groups = new DisjointSets(entities.size());
+        Map<Integer, List<Integer>> joinedTo = new HashMap<>();
+        EntityCandidates candidates = new EntityCandidates(names, mode);
+        for (int a = 0; a < entities.size(); a++) {
+            for (int b : candidates.of(a)) {
+                if (b <= a || moduleOf[a] == moduleOf[b] || groups.find(a) == groups.find(b)) {
+                    continue;
+                }
+                if (similarityUtils.nameSimilarity(names.get(a), names.get(b), mode) > config.getEntitySimilarityCutoff()) {
+                    groups.union(a, b);
+                    joinedTo.computeIfAbsent(a, k -> new ArrayList<>()).add(b);
+                    joinedTo.computeIfAbsent(b, k -> new ArrayList<>()).add(a);
+                }
+            }
+        }
+
+        // collect the members of each group, in the order of their first member
+        Map<Integer, List<Integer>> members = new LinkedHashMap<>();
+        for (int i = 0; i < entities.size(); i++) {
+            members.computeIfAbsent(groups.find(i), k -> new ArrayList<>()).add(i);
+        }
+
+        Set<Entity> merged = new HashSet<>();
+        for (List<Integer> group : members.values()) {
+            Entity result = mergeGroup(group, flat, joinedTo, mode);
+            if (references != null) {
+                references.merged(ReferenceIndex.key(GLOBAL_RESULT, result.getEntityName().getName()), flat.key(group.get(0)));
+            }
+            merged.add(result);
+        }
+        return merged;
+    }
+
+    /**
+     * merges a group of similar entities into the first one
+     * <p>
+     * a member can join the group through a chain of similar entities without being similar to the first one, so each
+     * member is aligned with the member it was joined to rather than with the first one
+     * @param group the indices of the entities to merge, the first one names the result
+     * @param flat all entities
+     * @param joinedTo the entities each entity was joined to
+     * @param mode how names are compared
+     * @return the merged entity
+     */
+    private Entity mergeGroup(List<Integer> group, FlatEntities flat, Map<Integer, List<Integer>> joinedTo, SimilarityMode mode) {
+        List<Entity> entities = flat.entities;
+        if (group.size() == 1) {
+            return entities.get(group.get(0)).clone();
+        }
+
+        // visit the members breadth first from the first one, so a member always comes after the one it was joined to
+        List<Entity> ordered = new ArrayList<>(group.size());
+        List<Integer> orderedIndices = new ArrayList<>(group.size());
+        int[] linkedTo = new int[group.size()];
+        Map<Integer, Integer> position = new HashMap<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        position.put(group.get(0), 0);
+        ordered.add(entities.get(group.get(0)));
+        orderedIndices.add(group.get(0));
+        queue.add(group.get(0));
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            for (int next : joinedTo.getOrDefault(current, Collections.emptyList())) {
+                if (position.containsKey(next)) {
+                    continue;
+                }
+                linkedTo[ordered.size()] = position.get(current);
+                position.put(next, ordered.size());
+                ordered.add(entities.get(next));
+                orderedIndices.add(next);
+                queue.add(next);
+            }
+        }
+
+        List<Map<Field, Field>> fieldMappings = new ArrayList<>(group.size() - 1);
+        for (int i = 1; i < ordered.size(); i++) {
+            Entity linked = ordered.get(linkedTo[i]);
+            fieldMappings.add(similarityUtils.globalFieldSimilarity(linked, ordered.get(i), mode).getRight());
+            if (references != null) {
+                references.merged(flat.key(orderedIndices.get(linkedTo[i])), flat.key(orderedIndices.get(i)));
+            }
+        }
+        return mergeLinked(ordered, linkedTo, fieldMappings);
+    }
+
+    /**
+     * scores every candidate pair of entities from different modules once
+     * <p>
+     * the system is sanitized and deduplicated like in {@link #createBoundedContext}, then every pair the global
+     * strategy would consider is scored. {@link SimilarityProfile#evaluate} gives the merge outcome for any cutoff.
+     * @param systemContext the system, it is not changed
+     * @param mode how names are compared
+     * @return the scores
+     */
+    public SimilarityProfile createSimilarityProfile(SystemContext systemContext, SimilarityMode mode) {
+        originalNames = new ConcurrentHashMap<>();
+        List<Module> modules = new ArrayList<>(modulesInOrder(systemContext));
+        List<String> moduleIds = moduleIds(modules);
+        List<Module> clones = sanitizedCopies(modules, moduleIds);
+        deduplicate(new EntityDeduplicator(), clones, moduleIds);
+
+        FlatEntities flat = new FlatEntities(clones);
+        SimilarityProfile profile = new SimilarityProfile(flat.moduleNames, flat.moduleOf, flat.names);
+        EntityCandidates candidates = new EntityCandidates(flat.names, mode);
+        for (int a = 0; a < flat.names.size(); a++) {
+            for (int b : candidates.of(a)) {
+                if (b <= a || flat.moduleOf[a] == flat.moduleOf[b]) {
+                    continue;
+                }
+                double similarity = similarityUtils.nameSimilarity(flat.names.get(a), flat.names.get(b), mode);
+                if (similarity > 0) {
+                    profile.add(a, b, similarity);
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * the entities of all modules in one list, modules and entities in name order
+     */
+    private static class FlatEntities {
+
+        final List<String> moduleNames = new ArrayList<>();
+
+        final List<Entity> entities = new ArrayList<>();
+
+        final List<String> names = new ArrayList<>();
+
+        // the index of the module of each entity
+        final int[] moduleOf;
+
+        FlatEntities(List<Module> modules) {
+            List<Module> sortedModules = new ArrayList<>(modules);
+            sortedModules.sort(Comparator.comparing(m -> m.getName().getName()));
+            List<Integer> moduleIds = new ArrayList<>();
+            for (int m = 0; m < sortedModules.size(); m++) {
+                moduleNames.add(sortedModules.get(m).getName().getName());
+                List<Entity> moduleEntities = new ArrayList<>(sortedModules.get(m).getEntities());
+                moduleEntities.sort(Comparator.comparing(e -> e.getEntityName().getName()));
+                for (Entity e : moduleEntities) {
+                    entities.add(e);
+                    names.add(e.getEntityName().getName());
+                    moduleIds.add(m);
+                }
+            }
+            moduleOf = moduleIds.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @return the key of the entity in the reference index
+         */
+        String key(int entity) {
+            return ReferenceIndex.key(moduleNames.get(moduleOf[entity]), names.get(entity));
+        }
+    }
+
+    /**
+     * finds the entities that are worth comparing with an entity
+     */
+    private static class EntityCandidates {
+
+        private final int size;
+
+        // exact matching only needs the entities with the same name
+        private final Map<String, int[]> byName;
+
+        // word vectors only need the nearest names
+        private final EmbeddingIndex index;
+
+        private final List<String> names;
+
+        EntityCandidates(List<String> names, SimilarityMode mode) {
+            this.size = names.size();
+            this.names = names;
+            this.byName = mode == SimilarityMode.BASIC ? groupByName(names) : null;
+            this.index = mode == SimilarityMode.EMBEDDING ? new EmbeddingIndex(WordVectors.getDefault(), names) : null;
+        }
+
+        int[] of(int id) {
+            if (byName != null) {
+                return byName.get(NameStripper.getBasicName(names.get(id)).toLowerCase());
+            }
+            if (index != null) {
+                return index.candidates(names.get(id));
+            }
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        private static Map<String, int[]> groupByName(List<String> names) {
+            Map<String, List<Integer>> grouped = new HashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                grouped.computeIfAbsent(NameStripper.getBasicName(names.get(i)).toLowerCase(), k -> new ArrayList<>()).add(i);
+            }
+            Map<String, int[]> byName = new HashMap<>();
+            grouped.forEach((name, ids) -> byName.put(name, ids.stream().mapToInt(Integer::intValue).toArray()));
+            return byName;
+        }
+    }
+
+    /**
+     * gets where the entities removed as exact copies in the last {@link #createBoundedContext} came from
+     * <p>
+     * modules are named by their original full name, so modules whose sanitized names collide stay apart
+     * @return for each kept entity ("module::Entity"), the modules that held an identical copy
+     */
+    public Map<String, List<String>> getProvenance() {
+        return provenance;
+    }
+
+    /**
+     * gets the names that sanitizing changed in the last {@link #createBoundedContext}
+     * <p>
+     * modules are named by their original full name like in {@link #getProvenance()}, so names stay apart where
+     * sanitized module names collide
+     * @return for each renamed module ("module"), entity ("module::Entity") or field ("module::Entity::field"), the
+     * original full name
+     */
+    public Map<String, String> getOriginalNames() {
+        return originalNames;
+    }
+
+    /**
+     * finds the entity of module two an entity is most similar to
+     * <p>
+     * during {@link #createBoundedContext} ties are broken by how many referenced entities the candidates share with
+     * the entity, otherwise by column order
+     * @param moduleOne the name of the module of the entity
+     * @param moduleTwo the name of the module of the candidates
+     * @return the column of the best candidate, -1 if none
+     */
+    private int bestCandidate(SimilarityMatrix entitySimilarity, int row, Entity entity, String moduleOne, List<Entity> entitiesTwo, String moduleTwo) {
+        int best = entitySimilarity.best(row);
+        if (best < 0 || references == null) {
+            return best;
+        }
+        int[] firstTwo = entitySimilarity.topK(row, 2);
+        double top = entitySimilarity.get(row, best);
+        if (firstTwo.length < 2 || entitySimilarity.get(row, firstTwo[1]) < top) {
+            return best;
+        }
+
+        String key = ReferenceIndex.key(moduleOne, entity.getEntityName().getName());
+        double bestOverlap = -1;
+        for (int column : entitySimilarity.topK(row, entitySimilarity.columns())) {
+            if (entitySimilarity.get(row, column) < top) {
+                break;
+            }
+            double overlap = references.overlap(key, ReferenceIndex.key(moduleTwo, entitiesTwo.get(column).getEntityName().getName()));
+            if (overlap > bestOverlap) {
+                bestOverlap = overlap;
+                best = column;
+            }
+        }
+        return best;
     }
 
     /**
@@ -65,96 +752,169 @@ public class BoundedContextUtilsImpl implements BoundedContextUtils {
      * @return a new module comprised of the other two
      */
     @Override
-    public Module mergeModules(Module moduleOne, Module moduleTwo, boolean useWuPalmer){
-
-        // for each entity find the similarity it has to other entities
-        Map<Entity, TreeMap<Double, ImmutablePair<Entity, Map<Field, Field>>>>
-                entitySimilarity = new HashMap<>();
-
-        // shows which entities in module two are encountered
-        Set<Entity> mappedInTwo = new HashSet<>();
-
-        // get all entities in module one
-        moduleOne.getEntities()
-
-            // for each entity in entity one add to entity similarity
-            .forEach(x -> entitySimilarity.put(
+    public Module mergeModules(Module moduleOne, Module moduleTwo, SimilarityMode mode){
+        return mergeModules(moduleOne, moduleTwo, Collections.emptyList(), mode);
+    }
 
-                // the current entity of module one
-                x,
+    /**
+     * merges two modules into one module as if the copies removed from module two were still in it
+     * <p>
+     * a removed copy is only compared with the entity it is a copy of, or what that entity was merged into, and is
+     * merged with it where that entity would have picked it. Copies that are not picked are added like any other
+     * unmatched entity of module two.
+     * @param copiesOfTwo the copies removed from module two, see {@link EntityDeduplicator#getCopies()}
+     */
+    private Module mergeModules(Module moduleOne, Module moduleTwo, List<EntityDeduplicator.Copy> copiesOfTwo, SimilarityMode mode){
 
-                // create stream of entity two entities
-                moduleTwo.getEntities().stream()
+        List<Entity> entitiesOne = new ArrayList<>(moduleOne.getEntities());
+        List<Entity> entitiesTwo = new ArrayList<>(moduleTwo.getEntities());
 
-                    // create map
-                    .collect(Collectors.toMap(
+        // for each entity find the similarity it has to other entities, within a budget only the best ones are kept,
+        // all of them if they tie so bestCandidate breaks the tie as it would without a budget
+        SimilarityMatrix entitySimilarity = config.isMemoryBounded()
+                ? new BoundedSimilarityMatrix(entitiesOne.size(), entitiesTwo.size(), 1, true)
+                : new DenseSimilarityMatrix(entitiesOne.size(), entitiesTwo.size());
 
-                        // similarity of entity from module one and entity from module two
-                        y -> similarityUtils.globalFieldSimilarity(x, y, useWuPalmer).getLeft(),
+        // with word vectors only the nearest names are scored, the rest stay at 0
+        EmbeddingIndex index = mode == SimilarityMode.EMBEDDING
+                ? new EmbeddingIndex(WordVectors.getDefault(), entitiesTwo.stream().map(e -> e.getEntityName().getName()).collect(Collectors.toList()))
+                : null;
 
-                        // tuple of entity from module two
-                        y -> new ImmutablePair<>(y,
-                                //and the field mapping
-                                similarityUtils.globalFieldSimilarity(x, y, useWuPalmer).getRight()),
-                        (oldValue,newValue) -> newValue,
-                        TreeMap::new
-                    ))
-                ));
+        for(int i = 0; i < entitiesOne.size(); i++){
+            String name = entitiesOne.get(i).getEntityName().getName();
+            int[] candidates = index == null ? null : index.candidates(name);
+            int candidateCount = candidates == null ? entitiesTwo.size() : candidates.length;
+            for(int c = 0; c < candidateCount; c++){
+                int j = candidates == null ? c : candidates[c];
+                // the similarity of two entities is the similarity of their names, fields are only aligned for merges
+                entitySimilarity.set(i, j, similarityUtils.nameSimilarity(name, entitiesTwo.get(j).getEntityName().getName(), mode));
+            }
+        }
 
         Module newModule = new Module(moduleOne.getName().getName());
 
         newModule.setEntities(new HashSet<>());
 
-        // sets the entities of the new module
-        newModule.getEntities().addAll(
-
-                // stream of all entries in entity similarity
-                entitySimilarity.entrySet().stream()
+        // shows which entities in module two are encountered
+        boolean[] mappedInTwo = new boolean[entitiesTwo.size()];
 
-                        // if the similarity is strong enough
-                        .filter(x -> {
-                            // if it is not mapped to anything, no merging needs to be performed
-                            if(x.getValue().isEmpty()){
-                                newModule.getEntities().add(x.getKey().clone());
-                                return false;
-                            }
+        // the removed copy each row was copied to, and the copies no row picks
+        Map<Integer, EntityDeduplicator.Copy> copyOf = new HashMap<>();
+        List<Entity> unmatchedCopies = new ArrayList<>();
+        placeCopies(copiesOfTwo, moduleOne, entitiesOne, copyOf, unmatchedCopies);
 
-                            Map.Entry<Double, ImmutablePair<Entity, Map<Field, Field>>> val = x.getValue().lastEntry();
-                            double similarity = val.getKey();
+        // sets the entities of the new module
+        for(int i = 0; i < entitiesOne.size(); i++){
+            Entity entity = entitiesOne.get(i);
+            int best = bestCandidate(entitySimilarity, i, entity, moduleOne.getName().getName(), entitiesTwo, moduleTwo.getName().getName());
+            EntityDeduplicator.Copy copy = copyOf.get(i);
+            boolean picksCopy = copy != null && picksCopy(entitySimilarity, i, best, entity, copy.getEntity(), mode);
 
-                            // if the two entities should be merged
-                            if (similarity > ENTITY_SIMILARITY_CUTOFF) {
-                                // add the one mapped to
-                                mappedInTwo.add(val.getValue().getLeft());
+            // if it is not mapped to anything, no merging needs to be performed
+            if(entitiesTwo.isEmpty() && copiesOfTwo.isEmpty()){
+                newModule.getEntities().add(entity.clone());
+            }
 
-                                return true;
-                            } else {
-                                newModule.getEntities().add(x.getKey().copyWithNamePreface(moduleOne.getName() + "::"));
-                                //val.getValue().getLeft().getEntityName().setFullName(moduleTwo.getName() + val.getValue().getLeft().getEntityName().getFullName() + "::");
-                                //newModule.getEntities().add(val.getValue().getLeft().copyWithNamePreface(moduleTwo.getName() + "::"));
+            // if the entity would have picked its removed copy
+            else if(picksCopy){
+                // an unchanged entity is its copy, so every field maps to itself
+                if(copy.isCopyOf(entity)){
+                    newModule.getEntities().add(mergeEntities(entity, entity, sameFields(entity)));
+                } else {
+                    newModule.getEntities().add(mergeEntities(entity, copy.getEntity(), similarityUtils.globalFieldSimilarity(entity, copy.getEntity(), mode).getRight()));
+                }
+                references.merged(key(newModule, entity), key(moduleTwo, copy.getEntity()));
+            }
 
-                                return false;
-                            }
+            // if the two entities should be merged
+            else if(best >= 0 && entitySimilarity.get(i, best) > config.getEntitySimilarityCutoff()){
+                // add the one mapped to
+                mappedInTwo[best] = true;
+                Entity other = entitiesTwo.get(best);
+                newModule.getEntities().add(mergeEntities(entity, other, similarityUtils.globalFieldSimilarity(entity, other, mode).getRight()));
+                if (references != null) {
+                    references.merged(key(newModule, entity), key(moduleTwo, other));
+                }
+            }
 
-                        })
+            else {
+                Entity prefaced = entity.copyWithNamePreface(moduleOne.getName() + "::");
+                newModule.getEntities().add(prefaced);
+                if (references != null) {
+                    references.merged(key(newModule, prefaced), key(moduleOne, entity));
+                }
+            }
 
-                        // map each mapping between entities to a new merged entity
-                        .map(x -> mergeEntities(x.getKey(), x.getValue().lastEntry().getValue().getLeft(), x.getValue().lastEntry().getValue().getRight()))
+            if(copy != null && !picksCopy){
+                unmatchedCopies.add(copy.getEntity());
+            }
+        }
 
-                        // collect as a list
-                        .collect(Collectors.toList())
-        );
+        // the copies no entity picked are added like the unmatched entities of module two
+        for(Entity copy : unmatchedCopies){
+            newModule.getEntities().add(copy);
+            references.merged(key(newModule, copy), key(moduleTwo, copy));
+        }
 
         // now add all of the entities in module two that were not mapped to
-        for(Entity e : moduleTwo.getEntities()){
-            if(!mappedInTwo.contains(e)){
-                newModule.getEntities().add(e);
+        for(int j = 0; j < entitiesTwo.size(); j++){
+            if(!mappedInTwo[j]){
+                newModule.getEntities().add(entitiesTwo.get(j));
+                if (references != null) {
+                    references.merged(key(newModule, entitiesTwo.get(j)), key(moduleTwo, entitiesTwo.get(j)));
+                }
             }
         }
 
         return newModule;
     }
 
+    /**
+     * finds the row of the entity each removed copy is a copy of, by following the kept entity through its merges
+     * @param copyOf receives the copy of each row, at most one per row
+     * @param unmatchedCopies receives the copies whose entity is not in module one
+     */
+    private void placeCopies(List<EntityDeduplicator.Copy> copies, Module moduleOne, List<Entity> entitiesOne,
+                             Map<Integer, EntityDeduplicator.Copy> copyOf, List<Entity> unmatchedCopies) {
+        if (copies.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> rows = new HashMap<>();
+        for (int i = 0; i < entitiesOne.size(); i++) {
+            rows.putIfAbsent(key(moduleOne, entitiesOne.get(i)), i);
+        }
+        for (EntityDeduplicator.Copy copy : copies) {
+            Integer row = rows.get(references.resolve(copy.getKeptKey()));
+            if (row == null || copyOf.putIfAbsent(row, copy) != null) {
+                unmatchedCopies.add(copy.getEntity());
+            }
+        }
+    }
+
+    /**
+     * @return true if the entity would have been merged with its removed copy, which happens when the copy is similar
+     * enough and at least as similar as the best candidate in module two
+     */
+    private boolean picksCopy(SimilarityMatrix entitySimilarity, int row, int best, Entity entity, Entity copy, SimilarityMode mode) {
+        double similarity = similarityUtils.nameSimilarity(entity.getEntityName().getName(), copy.getEntityName().getName(), mode);
+        return similarity > config.getEntitySimilarityCutoff() && (best < 0 || similarity >= entitySimilarity.get(row, best));
+    }
+
+    /**
+     * @return the mapping of every field of the entity to itself
+     */
+    private static Map<Field, Field> sameFields(Entity entity) {
+        Map<Field, Field> mapping = new HashMap<>();
+        for (Field field : entity.getFields()) {
+            mapping.put(field, field);
+        }
+        return mapping;
+    }
+
+    private static String key(Module module, Entity entity) {
+        return ReferenceIndex.key(module.getName().getName(), entity.getEntityName().getName());
+    }
+
     /**
      * merges two entities together using the field mapping
      * @param one the first entity to merge
@@ -176,26 +936,7 @@ public class BoundedContextUtilsImpl implements BoundedContextUtils {
             fieldMapping = new HashMap<>();
         }
 
-        Set<Field> alreadyEncountered = new HashSet<>();
-
-        // make sure that all fields in the field mapping are also in f1 and that no two map to the same value
-        for(final Map.Entry<Field, Field> f : fieldMapping.entrySet()){
-            if(Objects.isNull(f.getValue())){
-                continue;
-            }
-            // make sure that the key exists
-            if(!one.getFields().contains(f.getKey())){
-                throw new FieldMappingException();
-            }
-            //make sure that the value exists
-            if(!entityTwoFields.contains(f.getValue())){
-                throw new FieldMappingException();
-            }
-            // if the second has already been mapped too
-            if(!alreadyEncountered.add(f.getValue())){
-                throw new FieldMappingException();
-            }
-        }
+        validateFieldMapping(one, entityTwoFields, fieldMapping);
 
         // for each field in entity one
         for (Field f1 : one.getFields()){
@@ -219,10 +960,12 @@ public class BoundedContextUtilsImpl implements BoundedContextUtils {
                     toAdd = f1;
                 }
 
-                // merge the fields into one field
+                // merge the fields into one field, it is new so it needs no copy
                 else {
-                    preface = "";
-                    toAdd = mergeFields(f1, f2);
+                    Field merged = mergeFields(f1, f2);
+                    merged.getName().setFullName(merged.getName().getName());
+                    newEntity.getFields().add(merged);
+                    continue;
                 }
             }
 
@@ -246,27 +989,154 @@ public class BoundedContextUtilsImpl implements BoundedContextUtils {
     }
 
     /**
-     * merges two fields into one field
-     * @param one the first field to merge
-     * @param two the second field to merge
-     * @return the new field
+     * merges a group of entities together in one pass
+     * @param entities the entities to merge, the first one names the result
+     * @param fieldMappings for each entity after the first, the mapping from the fields of the first entity to its fields
+     * @return the newly created merged entity
      */
     @Override
-    public Field mergeFields(Field one, Field two) {
-        String name = one.getName().getName();
-        String type = Type.get(one.getType()).ordinal() < Type.get(two.getType()).ordinal() ? two.getType() : one.getType();
+    public Entity mergeEntities(List<Entity> entities, List<Map<Field, Field>> fieldMappings) {
+        if (entities.isEmpty()) {
+            throw new IllegalArgumentException("no entities to merge");
+        }
+        if (fieldMappings.size() != entities.size() - 1) {
+            throw new FieldMappingException("expected " + (entities.size() - 1) + " field mappings but got " + fieldMappings.size());
+        }
+
+        return mergeLinked(entities, new int[entities.size()], fieldMappings);
+    }
+
+    /**
+     * merges a group of entities together in one pass, each entity aligned with an entity before it
+     * @param entities the entities to merge, the first one names the result
+     * @param linkedTo for each entity after the first, the index of the earlier entity its mapping is from
+     * @param fieldMappings for each entity after the first, the mapping from the fields of its linked entity to its fields
+     * @return the newly created merged entity
+     */
+    private Entity mergeLinked(List<Entity> entities, int[] linkedTo, List<Map<Field, Field>> fieldMappings) {
+        Entity first = entities.get(0);
+
+        // the entity that is to be returned
+        Entity newEntity = new Entity(first.getEntityName());
+
+        // one slot per distinct field, the fields mapped to a field of a slot are merged into the slot
+        List<MergedFieldBuilder> slots = new ArrayList<>();
+        List<Field> slotFields = new ArrayList<>();
+        List<String> slotPrefaces = new ArrayList<>();
 
-        Field toReturn = new Field(type, name);
+        // for each entity, the slot each of its fields went into
+        List<Map<Field, Integer>> slotOf = new ArrayList<>(entities.size());
 
-        // set isCollection
-        toReturn.setCollection(one.isCollection() || two.isCollection());
+        Map<Field, Integer> firstSlots = new HashMap<>();
+        for (Field f : first.getFields()) {
+            firstSlots.put(f, addSlot(slots, slotFields, slotPrefaces, f, first.getEntityName() + "::"));
+        }
+        slotOf.add(firstSlots);
+
+        for (int i = 1; i < entities.size(); i++) {
+            Entity linked = entities.get(linkedTo[i]);
+            Entity other = entities.get(i);
+            Map<Field, Field> fieldMapping = Objects.isNull(fieldMappings.get(i - 1)) ? Collections.<Field, Field>emptyMap() : fieldMappings.get(i - 1);
+            String preface = other.getEntityName().getName() + "::";
 
-        // set the annotations
-        toReturn.setAnnotations(one.getAnnotations());
-        toReturn.getAnnotations().addAll(two.getAnnotations());
+            Set<Field> otherFields = new HashSet<>(other.getFields());
+            validateFieldMapping(linked, otherFields, fieldMapping);
 
-        toReturn.setReference(one.isReference() | two.isReference());
+            Map<Field, Integer> otherSlots = new HashMap<>();
+            for (Field f1 : linked.getFields()) {
+                Field f2 = fieldMapping.get(f1);
+                if (f2 == null) {
+                    continue;
+                }
+                otherFields.remove(f2);
 
-        return toReturn;
+                // two different references stay separate
+                if (f1.isReference() && f2.isReference() && !f1.equals(f2)) {
+                    otherSlots.put(f2, addSlot(slots, slotFields, slotPrefaces, f2, preface));
+                } else {
+                    int slot = slotOf.get(linkedTo[i]).get(f1);
+                    slots.get(slot).merge(f2, similarityUtils.typeOrdinal(f2));
+                    otherSlots.put(f2, slot);
+                }
+            }
+
+            // the remaining fields of this entity start slots of their own
+            for (Field f : otherFields) {
+                otherSlots.put(f, addSlot(slots, slotFields, slotPrefaces, f, preface));
+            }
+            slotOf.add(otherSlots);
+        }
+
+        for (int k = 0; k < slots.size(); k++) {
+            MergedFieldBuilder slot = slots.get(k);
+            if (slot.isMerged()) {
+                Field merged = slot.build();
+                merged.getName().setFullName(merged.getName().getName());
+                newEntity.getFields().add(merged);
+            } else {
+                newEntity.getFields().add(copyWithPreface(slotFields.get(k), slotPrefaces.get(k)));
+            }
+        }
+
+        return newEntity;
+    }
+
+    /**
+     * starts a slot for a field
+     * @return the index of the slot
+     */
+    private int addSlot(List<MergedFieldBuilder> slots, List<Field> slotFields, List<String> slotPrefaces, Field field, String preface) {
+        slots.add(new MergedFieldBuilder(field, similarityUtils.typeOrdinal(field)));
+        slotFields.add(field);
+        slotPrefaces.add(preface);
+        return slots.size() - 1;
+    }
+
+    /**
+     * makes sure that all fields in the field mapping are in the entities and that no two map to the same field
+     * @param one the entity the mapping is from
+     * @param twoFields the fields of the entity the mapping is to
+     * @param fieldMapping the mapping
+     */
+    private static void validateFieldMapping(Entity one, Set<Field> twoFields, Map<Field, Field> fieldMapping) {
+        Set<Field> alreadyEncountered = new HashSet<>();
+
+        for(final Map.Entry<Field, Field> f : fieldMapping.entrySet()){
+            if(Objects.isNull(f.getValue())){
+                continue;
+            }
+            // make sure that the key exists
+            if(!one.getFields().contains(f.getKey())){
+                throw new FieldMappingException();
+            }
+            //make sure that the value exists
+            if(!twoFields.contains(f.getValue())){
+                throw new FieldMappingException();
+            }
+            // if the second has already been mapped too
+            if(!alreadyEncountered.add(f.getValue())){
+                throw new FieldMappingException();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the field whose full name is the preface followed by its name
+     */
+    private static Field copyWithPreface(Field field, String preface) {
+        Field copy = field.clone();
+        copy.getName().setFullName(preface + copy.getName().getName());
+        return copy;
+    }
+
+    /**
+     * merges two fields into one field
+     * @param one the first field to merge
+     * @param two the second field to merge
+     * @return the new field
+     */
+    @Override
+    public Field mergeFields(Field one, Field two) {
+        return new MergedFieldBuilder(one, similarityUtils.typeOrdinal(one)).merge(two, similarityUtils.typeOrdinal(two)).build();
     }
 }
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
+
+import java.util.Arrays;
+
+/**
+ * {@link SimilarityMatrix} that only keeps the k best non zero scores of each row
+ * <p>
+ * memory is O(rows * k) no matter how many columns there are. A score that is pushed out of the top k reads back as 0.
+ * With k at least the number of columns this behaves exactly like {@link SparseSimilarityMatrix}. A matrix that keeps
+ * ties also keeps every score equal to the k-th best of its row, so a row only grows past k for ties.
+ */
+public class BoundedSimilarityMatrix implements SimilarityMatrix {
+
+    private final int rows;
+
+    private final int columns;
+
+    // the number of candidates kept per row
+    private final int k;
+
+    // whether scores tied with the k-th best are kept too
+    private final boolean keepTies;
+
+    // the kept columns and scores of each row, best first
+    private final int[][] rowColumns;
+
+    private final double[][] rowScores;
+
+    private final int[] rowSizes;
+
+    public BoundedSimilarityMatrix(int rows, int columns, int k){
+        this(rows, columns, k, false);
+    }
+
+    /**
+     * @param keepTies whether scores tied with the k-th best of their row are kept beyond k
+     */
+    public BoundedSimilarityMatrix(int rows, int columns, int k, boolean keepTies){
+        if(k < 1){
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.k = Math.min(k, Math.max(columns, 1));
+        this.keepTies = keepTies;
+        this.rowColumns = new int[rows][];
+        this.rowScores = new double[rows][];
+        this.rowSizes = new int[rows];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        int index = indexOf(row, column);
+        return index < 0 ? 0.0 : rowScores[row][index];
+    }
+
+    @Override
+    public void set(int row, int column, double similarity) {
+        if(column < 0 || column >= columns){
+            throw new IndexOutOfBoundsException("column " + column);
+        }
+
+        // drop the old score of the cell
+        int index = indexOf(row, column);
+        if(index >= 0){
+            int size = --rowSizes[row];
+            System.arraycopy(rowColumns[row], index + 1, rowColumns[row], index, size - index);
+            System.arraycopy(rowScores[row], index + 1, rowScores[row], index, size - index);
+        }
+
+        // zero is not a candidate
+        if(similarity == 0.0){
+            return;
+        }
+
+        if(rowColumns[row] == null){
+            rowColumns[row] = new int[k];
+            rowScores[row] = new double[k];
+        }
+
+        int[] keptColumns = rowColumns[row];
+        double[] keptScores = rowScores[row];
+        int size = rowSizes[row];
+
+        // skip if it does not beat the worst kept candidate, or with ties kept if it is below the k-th
+        if(keepTies){
+            if(size >= k && similarity < keptScores[k - 1]){
+                return;
+            }
+            if(size == keptColumns.length){
+                keptColumns = rowColumns[row] = Arrays.copyOf(keptColumns, 2 * size);
+                keptScores = rowScores[row] = Arrays.copyOf(keptScores, 2 * size);
+            }
+        } else if(size == k){
+            if(!SimilarityMatrixSupport.ranksBefore(similarity, column, keptScores[size - 1], keptColumns[size - 1])){
+                return;
+            }
+            size--;
+        }
+
+        int pos = size;
+        while(pos > 0 && SimilarityMatrixSupport.ranksBefore(similarity, column, keptScores[pos - 1], keptColumns[pos - 1])){
+            keptColumns[pos] = keptColumns[pos - 1];
+            keptScores[pos] = keptScores[pos - 1];
+            pos--;
+        }
+        keptColumns[pos] = column;
+        keptScores[pos] = similarity;
+        size++;
+
+        // drop the candidates no longer tied with the k-th
+        while(keepTies && size > k && keptScores[size - 1] < keptScores[k - 1]){
+            size--;
+        }
+        rowSizes[row] = size;
+    }
+
+    @Override
+    public int best(int row) {
+        return rowSizes[row] == 0 ? -1 : rowColumns[row][0];
+    }
+
+    @Override
+    public int[] topK(int row, int k) {
+        int size = Math.max(0, Math.min(k, rowSizes[row]));
+        return size == 0 ? new int[0] : Arrays.copyOf(rowColumns[row], size);
+    }
+
+    private int indexOf(int row, int column){
+        for(int i = 0; i < rowSizes[row]; i++){
+            if(rowColumns[row][i] == column){
+                return i;
+            }
+        }
+        return -1;
+    }
+}
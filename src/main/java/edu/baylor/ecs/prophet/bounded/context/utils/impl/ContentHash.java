@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 of the content of a bounded context, system context or any other json serializable value
+ * <p>
+ * the value is hashed through its json tree. Object members are hashed in key order and arrays as the sorted hashes
+ * of their elements, since every collection of the model is a set. Two values with the same content therefore have
+ * the same hash whatever order their sets iterate in.
+ */
+public final class ContentHash {
+
+    private static final Gson GSON = new Gson();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash(){
+    }
+
+    /**
+     * @param value the value to hash
+     * @return the hash as 64 lower case hex digits
+     */
+    public static String of(Object value){
+        return hex(digest(GSON.toJsonTree(value)));
+    }
+
+    /**
+     * @param json the json tree to hash
+     * @return the hash as 64 lower case hex digits
+     */
+    public static String of(JsonElement json){
+        return hex(digest(json));
+    }
+
+    private static byte[] digest(JsonElement element){
+        MessageDigest digest = sha256();
+        if (element == null || element.isJsonNull()) {
+            digest.update((byte) 'n');
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            digest.update((byte) 'p');
+            digest.update(primitive.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            List<byte[]> children = new ArrayList<>(array.size());
+            for (JsonElement child : array) {
+                children.add(digest(child));
+            }
+            children.sort(ContentHash::compareUnsigned);
+            digest.update((byte) 'a');
+            for (byte[] child : children) {
+                digest.update(child);
+            }
+        } else {
+            JsonObject object = element.getAsJsonObject();
+            Map<String, JsonElement> members = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+                members.put(member.getKey(), member.getValue());
+            }
+            digest.update((byte) 'o');
+            for (Map.Entry<String, JsonElement> member : members.entrySet()) {
+                digest.update(member.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(digest(member.getValue()));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b){
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    private static String hex(byte[] bytes){
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest sha256(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
+
+/**
+ * {@link SimilarityMatrix} backed by a single row major double array
+ * <p>
+ * every cell is stored, so this is meant for small matrices such as entity against entity. As with the other
+ * implementations a cell scoring 0 is not a candidate.
+ */
+public class DenseSimilarityMatrix implements SimilarityMatrix {
+
+    private final int rows;
+
+    private final int columns;
+
+    // row major scores
+    private final double[] scores;
+
+    public DenseSimilarityMatrix(int rows, int columns){
+        this.rows = rows;
+        this.columns = columns;
+        this.scores = new double[rows * columns];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return scores[row * columns + column];
+    }
+
+    @Override
+    public void set(int row, int column, double similarity) {
+        scores[row * columns + column] = similarity;
+    }
+
+    @Override
+    public int best(int row) {
+        int offset = row * columns;
+        int best = -1;
+        for(int column = 0; column < columns; column++){
+            // zero is not a candidate, strictly greater so that the lowest column wins ties
+            if(scores[offset + column] != 0.0 && (best < 0 || scores[offset + column] > scores[offset + best])){
+                best = column;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int[] topK(int row, int k) {
+        // gather the non zero cells so the selection sees the same candidates as the sparse matrix
+        int[] rowColumns = new int[columns];
+        double[] rowScores = new double[columns];
+        int length = 0;
+        for(int column = 0, offset = row * columns; column < columns; column++){
+            if(scores[offset + column] != 0.0){
+                rowColumns[length] = column;
+                rowScores[length] = scores[offset + column];
+                length++;
+            }
+        }
+        return SimilarityMatrixSupport.selectTopK(rowColumns, rowScores, length, k);
+    }
+}
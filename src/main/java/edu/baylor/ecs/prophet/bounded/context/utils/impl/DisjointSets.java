@@ -0,0 +1,57 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+/**
+ * union find over the ids 0 to n - 1
+ */
+class DisjointSets {
+
+    private final int[] parent;
+
+    private final int[] size;
+
+    DisjointSets(int n){
+        parent = new int[n];
+        size = new int[n];
+        for(int i = 0; i < n; i++){
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * @return the representative of the set holding id
+     */
+    int find(int id){
+        while(parent[id] != id){
+            // path halving
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * joins the sets of two ids
+     * @return true if they were in different sets
+     */
+    boolean union(int one, int two){
+        int rootOne = find(one);
+        int rootTwo = find(two);
+        if(rootOne == rootTwo){
+            return false;
+        }
+        if(size[rootOne] < size[rootTwo]){
+            int swap = rootOne;
+            rootOne = rootTwo;
+            rootTwo = swap;
+        }
+        parent[rootTwo] = rootOne;
+        size[rootOne] += size[rootTwo];
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import java.util.*;
+
+/**
+ * approximate nearest neighbour index over names using random hyperplane locality sensitive hashing
+ * <p>
+ * every name gets one signature per table, where each bit is the side of a random hyperplane the name's vector falls
+ * on. Names with close vectors share a bucket in at least one table with high probability, so only the names in the
+ * same buckets need to be scored. Names without a vector can only be found by an exact (case insensitive) match.
+ */
+public class EmbeddingIndex {
+
+    public static final int DEFAULT_TABLES = 8;
+
+    public static final int DEFAULT_BITS = 10;
+
+    private static final long SEED = 0x5eed_b0dcL;
+
+    private final WordVectors vectors;
+
+    // hyperplanes[table][bit] is the normal of one hyperplane
+    private final float[][][] hyperplanes;
+
+    // buckets[table] maps a signature to the ids in that bucket
+    private final List<Map<Integer, List<Integer>>> buckets;
+
+    // lower cased name to ids, so exact matches are always candidates
+    private final Map<String, List<Integer>> exact = new HashMap<>();
+
+    public EmbeddingIndex(WordVectors vectors, List<String> names){
+        this(vectors, names, DEFAULT_TABLES, DEFAULT_BITS);
+    }
+
+    /**
+     * builds the index
+     * @param vectors the word vectors
+     * @param names the names to index, the id of a name is its position in the list
+     * @param tables the number of hash tables
+     * @param bits the number of hyperplanes per table (at most 31)
+     */
+    public EmbeddingIndex(WordVectors vectors, List<String> names, int tables, int bits){
+        this.vectors = vectors;
+        int dimension = vectors.dimension();
+        int tableCount = dimension == 0 ? 0 : tables;
+
+        // the hyperplanes are seeded so that the index is the same every run
+        Random random = new Random(SEED);
+        hyperplanes = new float[tableCount][Math.min(bits, 31)][dimension];
+        for(float[][] table : hyperplanes){
+            for(float[] plane : table){
+                for(int i = 0; i < dimension; i++){
+                    plane[i] = (float) random.nextGaussian();
+                }
+            }
+        }
+
+        buckets = new ArrayList<>(tableCount);
+        for(int t = 0; t < tableCount; t++){
+            buckets.add(new HashMap<>());
+        }
+
+        for(int id = 0; id < names.size(); id++){
+            String name = NameStripper.getBasicName(names.get(id));
+            exact.computeIfAbsent(name.toLowerCase(), k -> new ArrayList<>()).add(id);
+
+            float[] vector = tableCount == 0 ? null : vectors.get(name);
+            if(vector == null){
+                continue;
+            }
+            for(int t = 0; t < tableCount; t++){
+                buckets.get(t).computeIfAbsent(signature(t, vector), k -> new ArrayList<>()).add(id);
+            }
+        }
+    }
+
+    /**
+     * finds the names that may be similar to a name
+     * @param name the name to look up
+     * @return the ids of the candidates in ascending order
+     */
+    public int[] candidates(String name){
+        String basicName = NameStripper.getBasicName(name);
+        BitSet found = new BitSet();
+
+        List<Integer> sameName = exact.get(basicName.toLowerCase());
+        if(sameName != null){
+            sameName.forEach(found::set);
+        }
+
+        float[] vector = buckets.isEmpty() ? null : vectors.get(basicName);
+        if(vector != null){
+            for(int t = 0; t < buckets.size(); t++){
+                List<Integer> bucket = buckets.get(t).get(signature(t, vector));
+                if(bucket != null){
+                    bucket.forEach(found::set);
+                }
+            }
+        }
+
+        return found.stream().toArray();
+    }
+
+    /**
+     * @return the signature of a vector in a table
+     */
+    private int signature(int table, float[] vector){
+        int signature = 0;
+        float[][] planes = hyperplanes[table];
+        for(int bit = 0; bit < planes.length; bit++){
+            double side = 0.0;
+            for(int i = 0; i < vector.length; i++){
+                side += planes[bit][i] * vector[i];
+            }
+            if(side >= 0){
+                signature |= 1 << bit;
+            }
+        }
+        return signature;
+    }
+}
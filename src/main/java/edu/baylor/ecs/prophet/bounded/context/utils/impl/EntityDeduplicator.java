@@ -0,0 +1,258 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import com.google.gson.Gson;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Annotation;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Entity;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Field;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * removes entities that are copied verbatim into several modules
+ * <p>
+ * microservices often share the same DTO class. Exact copies are collapsed up front in one pass, so only the first copy
+ * is compared with the entities of other modules.
+ * <p>
+ * the removed copies are kept aside with the key of the entity they copy (see {@link #getCopies()}). Pairwise merging
+ * passes the modules in the order it merges them, so the kept copy is the one that is merged first, and it is merged
+ * with each removed copy when it meets the module that copy was removed from. The result is the same as merging every
+ * copy, only the removed copies are not compared with the other entities of their module.
+ * <p>
+ * entities are identified by a SHA-256 digest of their canonical content, so modules can be deduplicated one at a time
+ * without keeping the entities of earlier modules around. The canonical key is unambiguous and covers everything the
+ * fields of an entity are compared by, so equal digests stand in for comparing the field sets.
+ * <p>
+ * modules are told apart by an id, such as their original full name, because sanitized names can collide
+ * ("a.pets" and "b.pets" are both "pets").
+ */
+public class EntityDeduplicator {
+
+    private static final Gson GSON = new Gson();
+
+    // digest of the kept entities to where they were kept
+    private final Map<ByteBuffer, Kept> seen = new HashMap<>();
+
+    // kept entity ("moduleId::Entity") to the ids of the modules of its copies
+    private final Map<String, List<String>> provenance = new HashMap<>();
+
+    // module id to the copies removed from it
+    private final Map<String, List<Copy>> copies = new HashMap<>();
+
+    /**
+     * where an entity was kept, as the key of its provenance and its key in the reference index
+     */
+    private static final class Kept {
+
+        private final String id;
+
+        private final String key;
+
+        Kept(String id, String key){
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    /**
+     * an entity removed as a copy of a kept entity
+     */
+    static final class Copy {
+
+        private final Entity entity;
+
+        private final String keptKey;
+
+        private final ByteBuffer digest;
+
+        Copy(Entity entity, String keptKey, ByteBuffer digest){
+            this.entity = entity;
+            this.keptKey = keptKey;
+            this.digest = digest;
+        }
+
+        /**
+         * @return the removed entity
+         */
+        Entity getEntity(){
+            return entity;
+        }
+
+        /**
+         * @return the key of the kept entity in the reference index ("module::Entity"), by sanitized module name
+         */
+        String getKeptKey(){
+            return keptKey;
+        }
+
+        /**
+         * @return true if the entity has the same content as the removed one
+         */
+        boolean isCopyOf(Entity entity){
+            return digest.equals(ByteBuffer.wrap(digest(entity)));
+        }
+    }
+
+    /**
+     * removes every entity that is identical to an entity of an earlier module, using the module names as ids
+     * @param modules the sanitized modules, duplicates are removed from them in place
+     * @return for each kept entity that had copies ("module::Entity"), the names of the modules the copies were in
+     */
+    public Map<String, List<String>> deduplicate(List<Module> modules){
+        List<String> moduleIds = new ArrayList<>(modules.size());
+        for(Module module : modules){
+            moduleIds.add(module.getName().getName());
+        }
+        return deduplicate(modules, moduleIds);
+    }
+
+    /**
+     * removes every entity that is identical to an entity of an earlier module
+     * @param modules the sanitized modules, duplicates are removed from them in place
+     * @param moduleIds the id of each module, in the same order
+     * @return for each kept entity that had copies ("moduleId::Entity"), the ids of the modules the copies were in
+     */
+    public Map<String, List<String>> deduplicate(List<Module> modules, List<String> moduleIds){
+        if(modules.size() != moduleIds.size()){
+            throw new IllegalArgumentException("expected " + modules.size() + " module ids but got " + moduleIds.size());
+        }
+        for(int i = 0; i < modules.size(); i++){
+            deduplicate(modules.get(i), moduleIds.get(i));
+        }
+        return getProvenance();
+    }
+
+    /**
+     * removes every entity that is identical to an entity of a module passed in before
+     * @param module the sanitized module, duplicates are removed from it in place
+     * @param moduleId the id of the module, unique among the modules passed in
+     */
+    public void deduplicate(Module module, String moduleId){
+        Map<ByteBuffer, Kept> keptHere = new HashMap<>();
+        List<Copy> removedHere = new ArrayList<>();
+
+        Iterator<Entity> entities = module.getEntities().iterator();
+        while(entities.hasNext()){
+            Entity entity = entities.next();
+            ByteBuffer digest = ByteBuffer.wrap(digest(entity));
+            Kept original = seen.get(digest);
+
+            if(original == null){
+                String name = entity.getEntityName().getName();
+                keptHere.putIfAbsent(digest, new Kept(moduleId + "::" + name, ReferenceIndex.key(module.getName().getName(), name)));
+            } else {
+                entities.remove();
+                provenance.computeIfAbsent(original.id, k -> new ArrayList<>()).add(moduleId);
+                removedHere.add(new Copy(entity, original.key, digest));
+            }
+        }
+
+        // copies within one module are not removed, only copies in later modules
+        seen.putAll(keptHere);
+        if(!removedHere.isEmpty()){
+            copies.put(moduleId, removedHere);
+        }
+    }
+
+    /**
+     * removes the copies an earlier {@link #deduplicate(Module, String)} found in another copy of the same module
+     * <p>
+     * lets copies be found in one order and removed in another without keeping every module around
+     * @param module a fresh sanitized copy of the module, its copies are removed in place
+     * @param moduleId the id the module was deduplicated under
+     */
+    public void removeCopies(Module module, String moduleId){
+        List<Copy> removed = copies.get(moduleId);
+        if(removed == null){
+            return;
+        }
+        Set<ByteBuffer> digests = new HashSet<>();
+        for(Copy copy : removed){
+            digests.add(copy.digest);
+        }
+        module.getEntities().removeIf(entity -> digests.contains(ByteBuffer.wrap(digest(entity))));
+    }
+
+    /**
+     * @return for each kept entity that had copies ("moduleId::Entity"), the ids of the modules the copies were in
+     */
+    public Map<String, List<String>> getProvenance(){
+        return provenance;
+    }
+
+    /**
+     * @return for each module id, the entities removed from it as copies, in the order they were found
+     */
+    Map<String, List<Copy>> getCopies(){
+        return copies;
+    }
+
+    /**
+     * builds the canonical key of an entity
+     * <p>
+     * every part is written with its length in front, so two different entities never have the same key, not even
+     * when a name contains the characters that separate the parts
+     * @param entity the entity
+     * @return the name followed by the sorted name, full name, type, flags and annotations of each field
+     */
+    static String canonicalKey(Entity entity){
+        List<String> fields = new ArrayList<>(entity.getFields().size());
+        for(Field f : entity.getFields()){
+            List<String> annotations = new ArrayList<>(f.getAnnotations() == null ? 0 : f.getAnnotations().size());
+            if(f.getAnnotations() != null){
+                for(Annotation a : f.getAnnotations()){
+                    annotations.add(GSON.toJson(a));
+                }
+            }
+            Collections.sort(annotations);
+
+            StringBuilder field = new StringBuilder();
+            part(field, f.getName().getName());
+            part(field, f.getName().getFullName());
+            part(field, f.getType());
+            field.append(f.isReference() ? 'r' : '-').append(f.isCollection() ? 'c' : '-').append(annotations.size());
+            for(String annotation : annotations){
+                part(field, annotation);
+            }
+            fields.add(field.toString());
+        }
+        Collections.sort(fields);
+
+        StringBuilder key = new StringBuilder();
+        part(key, entity.getEntityName().getName());
+        key.append(fields.size());
+        for(String field : fields){
+            part(key, field);
+        }
+        return key.toString();
+    }
+
+    /**
+     * appends a part of a key as its length, a colon and the part, null as a lone minus sign
+     */
+    private static void part(StringBuilder key, String part){
+        if(part == null){
+            key.append('-');
+        } else {
+            key.append(part.length()).append(':').append(part);
+        }
+    }
+
+    private static byte[] digest(Entity entity){
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(canonicalKey(entity).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
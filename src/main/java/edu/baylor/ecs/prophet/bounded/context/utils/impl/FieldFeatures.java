@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Annotation;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Field;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a field encoded once into the features its similarity is computed from
+ * <p>
+ * names and annotations are numbered by the {@link Encoder} that encoded the field, so only features from the same
+ * encoder can be compared. An encoder is kept for a whole run, so each field is encoded once however many entities it
+ * is compared with. The similarity of two fields is the similarity of their names scaled by how well their
+ * type, annotations and flags agree: fields that agree on everything score exactly their name similarity, and fields
+ * with unrelated names score 0 whatever else they share. Types that widen straight into each other agree in part.
+ */
+final class FieldFeatures {
+
+    // how much each part counts, they add up to 1
+    static final double NAME_WEIGHT = 0.7;
+
+    static final double TYPE_WEIGHT = 0.15;
+
+    static final double ANNOTATION_WEIGHT = 0.1;
+
+    static final double FLAG_WEIGHT = 0.05;
+
+    private static final int REFERENCE = 1;
+
+    private static final int COLLECTION = 2;
+
+    // the id of the name as written, the similarity modes handle case themselves
+    final int nameId;
+
+    // the ordinal of the type, see FieldTypes
+    final int typeOrdinal;
+
+    // one bit per annotation, annotations past the 64th share bits
+    final long annotations;
+
+    // REFERENCE and COLLECTION
+    final int flags;
+
+    private FieldFeatures(int nameId, int typeOrdinal, long annotations, int flags){
+        this.nameId = nameId;
+        this.typeOrdinal = typeOrdinal;
+        this.annotations = annotations;
+        this.flags = flags;
+    }
+
+    /**
+     * @param one the first field
+     * @param two the second field
+     * @param nameSimilarity the similarity of their names
+     * @return the similarity of the fields
+     */
+    static double similarity(FieldFeatures one, FieldFeatures two, double nameSimilarity){
+        if (nameSimilarity <= 0) {
+            return 0;
+        }
+        double type = FieldTypes.agreement(one.typeOrdinal, two.typeOrdinal);
+        long union = one.annotations | two.annotations;
+        double annotations = union == 0 ? 1 : (double) Long.bitCount(one.annotations & two.annotations) / Long.bitCount(union);
+        double flags = one.flags == two.flags ? 1 : 0;
+        return nameSimilarity * (NAME_WEIGHT + TYPE_WEIGHT * type + ANNOTATION_WEIGHT * annotations + FLAG_WEIGHT * flags);
+    }
+
+    /**
+     * numbers the names and annotations of the fields it encodes, and remembers the features of each field object
+     */
+    static final class Encoder {
+
+        private final Map<String, Integer> nameIds = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        private final Map<Annotation, Integer> annotationBits = new HashMap<>();
+
+        // the ordinal of each type name seen in the run
+        private final Map<String, Integer> typeOrdinals = new HashMap<>();
+
+        // the features of each field encoded so far, by identity as fields are mutable, null if they are not kept
+        private final Map<Field, FieldFeatures> encoded;
+
+        /**
+         * @param keepFields whether the features of each field are kept, which holds on to the fields until the
+         *                   encoder is dropped
+         */
+        Encoder(boolean keepFields){
+            this.encoded = keepFields ? new IdentityHashMap<>() : null;
+        }
+
+        synchronized FieldFeatures encode(Field field){
+            FieldFeatures features = encoded == null ? null : encoded.get(field);
+            if (features == null) {
+                features = newFeatures(field);
+                if (encoded != null) {
+                    encoded.put(field, features);
+                }
+            }
+            return features;
+        }
+
+        private FieldFeatures newFeatures(Field field){
+            String name = field.getName().getName();
+            Integer nameId = nameIds.get(name);
+            if (nameId == null) {
+                nameId = names.size();
+                nameIds.put(name, nameId);
+                names.add(name);
+            }
+
+            long bits = 0;
+            if (field.getAnnotations() != null) {
+                for (Annotation annotation : field.getAnnotations()) {
+                    Integer bit = annotationBits.get(annotation);
+                    if (bit == null) {
+                        bit = annotationBits.size() % Long.SIZE;
+                        annotationBits.put(annotation, bit);
+                    }
+                    bits |= 1L << bit;
+                }
+            }
+
+            int flags = (field.isReference() ? REFERENCE : 0) | (field.isCollection() ? COLLECTION : 0);
+            return new FieldFeatures(nameId, typeOrdinal(field.getType()), bits, flags);
+        }
+
+        /**
+         * @return the ordinal of the type of the field, from its features if it was encoded
+         */
+        synchronized int typeOrdinal(Field field){
+            FieldFeatures features = encoded == null ? null : encoded.get(field);
+            return features != null ? features.typeOrdinal : typeOrdinal(field.getType());
+        }
+
+        private int typeOrdinal(String type){
+            Integer ordinal = typeOrdinals.get(type);
+            if (ordinal == null) {
+                ordinal = FieldTypes.ordinal(type);
+                typeOrdinals.put(type, ordinal);
+            }
+            return ordinal;
+        }
+
+        /**
+         * @return the name with the given id
+         */
+        synchronized String name(int nameId){
+            return names.get(nameId);
+        }
+    }
+}
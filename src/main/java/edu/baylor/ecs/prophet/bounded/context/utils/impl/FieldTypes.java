@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Type;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * resolves field type names to {@link Type} ordinals, a later ordinal being a wider type
+ */
+final class FieldTypes {
+
+    // ordinal of the names of the Type constants, other names are cached per run by FieldFeatures.Encoder
+    private static final Map<String, Integer> ORDINALS = new HashMap<>();
+
+    // the ordinal of the wider of two types, by their ordinals
+    private static final int[][] WIDER;
+
+    // how well two types agree, by their ordinals: 1 for the same type, half for neighbours in widening order
+    private static final double[][] AGREEMENT;
+
+    static {
+        for (Type type : Type.values()) {
+            for (String name : new String[]{type.name(), type.name().toLowerCase(Locale.ROOT), type.toString()}) {
+                ORDINALS.put(name, Type.get(name).ordinal());
+            }
+        }
+        int count = Type.values().length;
+        WIDER = new int[count][count];
+        AGREEMENT = new double[count][count];
+        for (int one = 0; one < count; one++) {
+            for (int two = 0; two < count; two++) {
+                WIDER[one][two] = one < two ? two : one;
+                AGREEMENT[one][two] = one == two ? 1 : Math.abs(one - two) == 1 ? 0.5 : 0;
+            }
+        }
+    }
+
+    private FieldTypes(){
+    }
+
+    /**
+     * @param type the type name of a field
+     * @return the ordinal of its {@link Type}
+     */
+    static int ordinal(String type){
+        Integer ordinal = ORDINALS.get(type);
+        return ordinal != null ? ordinal : Type.get(type).ordinal();
+    }
+
+    /**
+     * @return true if the type with ordinal {@code other} is wider than the type with ordinal {@code current}
+     */
+    static boolean isWider(int current, int other){
+        return WIDER[current][other] != current;
+    }
+
+    /**
+     * @return 1 if the types with the given ordinals are the same, 0.5 if one widens straight into the other, else 0
+     */
+    static double agreement(int one, int two){
+        return AGREEMENT[one][two];
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import java.util.List;
+
+/**
+ * dictionary free similarity of identifiers
+ * <p>
+ * compound names such as "configurationId" or "serialNumber" are not in WordNet, so they are compared by their
+ * characters instead. The similarity of two names is the larger of their Jaro Winkler similarity and the overlap of
+ * their camel case words, where two words of four or more letters also count as the same word when they are one edit
+ * apart ("exam" and "exams").
+ */
+public final class LexicalSimilarity {
+
+    // the winkler prefix scale and the longest prefix it is applied to
+    private static final double PREFIX_SCALE = 0.1;
+    private static final int MAX_PREFIX = 4;
+
+    // the jaro similarity the prefix boost starts at, below it a shared prefix is not evidence of the same name
+    private static final double BOOST_THRESHOLD = 0.7;
+
+    // words shorter than this must match exactly
+    private static final int MIN_FUZZY_WORD = 4;
+
+    // the pattern bit masks used by the Myers kernel, cleared after every call
+    private static final ThreadLocal<long[]> PATTERN_MASKS = ThreadLocal.withInitial(() -> new long[128]);
+
+    private LexicalSimilarity(){}
+
+    /**
+     * finds the lexical similarity of two names
+     * @param one the first name
+     * @param two the second name
+     * @return the similarity in [0, 1]
+     */
+    public static double similarity(String one, String two){
+        if(one.equalsIgnoreCase(two)) return 1.0;
+        double jaroWinkler = jaroWinkler(one.toLowerCase(), two.toLowerCase());
+        return Math.max(jaroWinkler, wordOverlap(NameStripper.splitIdentifier(one), NameStripper.splitIdentifier(two)));
+    }
+
+    /**
+     * finds the Jaro Winkler similarity of two strings
+     * <p>
+     * the matched characters of each string are tracked in long bit sets rather than boolean arrays. As in Winkler's
+     * definition the common prefix only raises a Jaro similarity above 0.7
+     * @param one the first string
+     * @param two the second string
+     * @return the similarity in [0, 1]
+     */
+    public static double jaroWinkler(String one, String two){
+        int lengthOne = one.length();
+        int lengthTwo = two.length();
+        if(lengthOne == 0 && lengthTwo == 0) return 1.0;
+        if(lengthOne == 0 || lengthTwo == 0) return 0.0;
+
+        int window = Math.max(0, Math.max(lengthOne, lengthTwo) / 2 - 1);
+        long[] matchedOne = new long[(lengthOne + 63) >>> 6];
+        long[] matchedTwo = new long[(lengthTwo + 63) >>> 6];
+
+        // find the matching characters within the window
+        int matches = 0;
+        for(int i = 0; i < lengthOne; i++){
+            char c = one.charAt(i);
+            int end = Math.min(lengthTwo - 1, i + window);
+            for(int j = Math.max(0, i - window); j <= end; j++){
+                if((matchedTwo[j >>> 6] & (1L << j)) == 0 && two.charAt(j) == c){
+                    matchedOne[i >>> 6] |= 1L << i;
+                    matchedTwo[j >>> 6] |= 1L << j;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if(matches == 0) return 0.0;
+
+        // count the matched characters that are out of order
+        int transpositions = 0;
+        int j = nextSetBit(matchedTwo, 0);
+        for(int i = nextSetBit(matchedOne, 0); i >= 0; i = nextSetBit(matchedOne, i + 1)){
+            if(one.charAt(i) != two.charAt(j)){
+                transpositions++;
+            }
+            j = nextSetBit(matchedTwo, j + 1);
+        }
+
+        double m = matches;
+        double jaro = (m / lengthOne + m / lengthTwo + (m - transpositions / 2) / m) / 3.0;
+        if(jaro <= BOOST_THRESHOLD) return jaro;
+
+        int prefix = 0;
+        int maxPrefix = Math.min(MAX_PREFIX, Math.min(lengthOne, lengthTwo));
+        while(prefix < maxPrefix && one.charAt(prefix) == two.charAt(prefix)){
+            prefix++;
+        }
+        return jaro + prefix * PREFIX_SCALE * (1.0 - jaro);
+    }
+
+    /**
+     * finds the Levenshtein distance of two strings
+     * <p>
+     * uses the bit parallel algorithm of Myers (as formulated by Hyyrö), which processes a whole column of the
+     * dynamic programming table per character when the pattern fits in a long. Longer or non ASCII patterns use the
+     * classic two row table.
+     * @param pattern the first string
+     * @param text the second string
+     * @return the edit distance
+     */
+    public static int editDistance(String pattern, String text){
+        int m = pattern.length();
+        if(m == 0) return text.length();
+        if(m > 64 || !isAscii(pattern) || !isAscii(text)){
+            return tableEditDistance(pattern, text);
+        }
+
+        long[] peq = PATTERN_MASKS.get();
+        for(int i = 0; i < m; i++){
+            peq[pattern.charAt(i)] |= 1L << i;
+        }
+
+        long pv = -1L;
+        long mv = 0L;
+        long last = 1L << (m - 1);
+        int score = m;
+        for(int j = 0; j < text.length(); j++){
+            long eq = peq[text.charAt(j)];
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if((ph & last) != 0){
+                score++;
+            } else if((mh & last) != 0){
+                score--;
+            }
+            ph = (ph << 1) | 1L;
+            mh = mh << 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+
+        for(int i = 0; i < m; i++){
+            peq[pattern.charAt(i)] = 0L;
+        }
+        return score;
+    }
+
+    /**
+     * finds the Dice overlap of two lists of words
+     * @return twice the matched words over the total number of words
+     */
+    static double wordOverlap(List<String> wordsOne, List<String> wordsTwo){
+        if(wordsOne.isEmpty() || wordsTwo.isEmpty()) return 0.0;
+
+        // each word of two can only be matched once
+        long[] used = new long[(wordsTwo.size() + 63) >>> 6];
+        int matched = 0;
+        for(String word : wordsOne){
+            for(int j = 0; j < wordsTwo.size(); j++){
+                if((used[j >>> 6] & (1L << j)) == 0 && sameWord(word, wordsTwo.get(j))){
+                    used[j >>> 6] |= 1L << j;
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return 2.0 * matched / (wordsOne.size() + wordsTwo.size());
+    }
+
+    private static boolean sameWord(String one, String two){
+        if(one.equals(two)) return true;
+        if(one.length() < MIN_FUZZY_WORD || two.length() < MIN_FUZZY_WORD) return false;
+        return Math.abs(one.length() - two.length()) <= 1 && editDistance(one, two) <= 1;
+    }
+
+    private static int tableEditDistance(String one, String two){
+        int[] previous = new int[two.length() + 1];
+        int[] current = new int[two.length() + 1];
+        for(int j = 0; j <= two.length(); j++){
+            previous[j] = j;
+        }
+        for(int i = 1; i <= one.length(); i++){
+            current[0] = i;
+            for(int j = 1; j <= two.length(); j++){
+                int cost = one.charAt(i - 1) == two.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[two.length()];
+    }
+
+    private static boolean isAscii(String s){
+        for(int i = 0; i < s.length(); i++){
+            if(s.charAt(i) >= 128) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the next set bit at or after from, -1 if there is none
+     */
+    private static int nextSetBit(long[] bits, int from){
+        int word = from >>> 6;
+        if(word >= bits.length) return -1;
+        long remaining = bits[word] & (-1L << from);
+        while(true){
+            if(remaining != 0){
+                return (word << 6) + Long.numberOfTrailingZeros(remaining);
+            }
+            if(++word == bits.length){
+                return -1;
+            }
+            remaining = bits[word];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Annotation;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Field;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * builds the field that several merged fields become
+ * <p>
+ * keeps the name of the first field, the widest type, the union of the annotations and a flag if any field has it.
+ * The fields given are never changed.
+ */
+final class MergedFieldBuilder {
+
+    private final Field first;
+
+    private String type;
+
+    private int typeOrdinal;
+
+    // null until a second field is merged
+    private Set<Annotation> annotations;
+
+    private boolean collection;
+
+    private boolean reference;
+
+    /**
+     * @param first the field the others are merged into
+     * @param typeOrdinal the ordinal of its type
+     */
+    MergedFieldBuilder(Field first, int typeOrdinal){
+        this.first = first;
+        this.type = first.getType();
+        this.typeOrdinal = typeOrdinal;
+        this.collection = first.isCollection();
+        this.reference = first.isReference();
+    }
+
+    /**
+     * @param other a field to merge into this one
+     * @param otherOrdinal the ordinal of its type
+     * @return this builder
+     */
+    MergedFieldBuilder merge(Field other, int otherOrdinal){
+        if (FieldTypes.isWider(typeOrdinal, otherOrdinal)) {
+            type = other.getType();
+            typeOrdinal = otherOrdinal;
+        }
+        Set<Annotation> otherAnnotations = annotationsOf(other);
+        if (annotations == null) {
+            Set<Annotation> firstAnnotations = annotationsOf(first);
+            annotations = new HashSet<>(2 * (firstAnnotations.size() + otherAnnotations.size()));
+            annotations.addAll(firstAnnotations);
+        }
+        annotations.addAll(otherAnnotations);
+        collection |= other.isCollection();
+        reference |= other.isReference();
+        return this;
+    }
+
+    /**
+     * @return true if any field was merged into the first
+     */
+    boolean isMerged(){
+        return annotations != null;
+    }
+
+    /**
+     * @return a new field, its full name is left as the constructor sets it
+     */
+    Field build(){
+        Field field = new Field(type, first.getName().getName());
+        field.setCollection(collection);
+        field.setAnnotations(annotations != null ? annotations : new HashSet<>(annotationsOf(first)));
+        field.setReference(reference);
+        return field;
+    }
+
+    private static Set<Annotation> annotationsOf(Field field){
+        return field.getAnnotations() == null ? Collections.<Annotation>emptySet() : field.getAnnotations();
+    }
+}
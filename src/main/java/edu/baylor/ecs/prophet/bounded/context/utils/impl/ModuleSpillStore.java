@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import com.google.gson.Gson;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Entity;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * stack of modules waiting to be merged that writes modules to disk once a heap budget is used up
+ * <p>
+ * the sizes of the modules are estimated from their entity, field and annotation counts. Spilled modules are written as
+ * json and read back (and their file deleted) when popped.
+ */
+class ModuleSpillStore implements Closeable {
+
+    // rough heap cost of each part of a module
+    private static final long ENTITY_BYTES = 256;
+    private static final long FIELD_BYTES = 192;
+    private static final long ANNOTATION_BYTES = 96;
+
+    private static final Gson GSON = new Gson();
+
+    private final long budget;
+
+    private final Path directory;
+
+    // top of the stack is the head
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    private long bytesInMemory = 0;
+
+    private int spilled = 0;
+
+    /**
+     * @param budget the estimated bytes of modules to keep in memory
+     * @param directory where spilled modules are written, null for the system temp directory
+     */
+    ModuleSpillStore(long budget, Path directory){
+        this.budget = budget;
+        this.directory = directory;
+    }
+
+    /**
+     * a module that is either in memory or on disk
+     */
+    private static class Entry {
+        Module module;
+        Path file;
+        long bytes;
+    }
+
+    void push(Module module) throws IOException {
+        Entry entry = new Entry();
+        entry.bytes = estimateBytes(module);
+        if(bytesInMemory + entry.bytes > budget){
+            entry.file = directory == null ? Files.createTempFile("bounded-context-", ".json") : Files.createTempFile(directory, "bounded-context-", ".json");
+            try(Writer out = Files.newBufferedWriter(entry.file, StandardCharsets.UTF_8)){
+                GSON.toJson(module, out);
+            }
+            spilled++;
+        } else {
+            entry.module = module;
+            bytesInMemory += entry.bytes;
+        }
+        entries.push(entry);
+    }
+
+    Module pop() throws IOException {
+        Entry entry = entries.pop();
+        if(entry.module != null){
+            bytesInMemory -= entry.bytes;
+            return entry.module;
+        }
+        try(Reader in = Files.newBufferedReader(entry.file, StandardCharsets.UTF_8)){
+            return GSON.fromJson(in, Module.class);
+        } finally {
+            Files.deleteIfExists(entry.file);
+        }
+    }
+
+    int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return the number of modules written to disk so far
+     */
+    int getSpilled(){
+        return spilled;
+    }
+
+    /**
+     * deletes the files of modules that were never popped
+     */
+    @Override
+    public void close() throws IOException {
+        for(Entry entry : entries){
+            if(entry.file != null){
+                Files.deleteIfExists(entry.file);
+            }
+        }
+        entries.clear();
+        bytesInMemory = 0;
+    }
+
+    /**
+     * @return the estimated heap size of a module
+     */
+    static long estimateBytes(Module module){
+        long bytes = ENTITY_BYTES;
+        for(Entity e : module.getEntities()){
+            bytes += ENTITY_BYTES + FIELD_BYTES * e.getFields().size();
+            bytes += e.getFields().stream().mapToLong(f -> f.getAnnotations() == null ? 0 : ANNOTATION_BYTES * f.getAnnotations().size()).sum();
+        }
+        return bytes;
+    }
+}
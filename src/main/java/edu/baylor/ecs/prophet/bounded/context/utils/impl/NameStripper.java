@@ -3,6 +3,12 @@ package edu.baylor.ecs.prophet.bounded.context.utils.impl;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class NameStripper {
 
     public static String getBasicName(String name){
@@ -10,6 +16,30 @@ public class NameStripper {
         return parts[parts.length - 1];
     }
 
+    /**
+     * splits an identifier such as "serialNumber" or "base_price" into lower case words
+     * @param name the identifier
+     * @return the words of the identifier
+     */
+    public static List<String> splitIdentifier(String name){
+        List<String> words = new ArrayList<>();
+        for(String part : name.split("[^a-zA-Z0-9]+")){
+            // break before an upper case letter that follows a lower case letter or digit,
+            // and before the last upper case letter of an acronym ("HTTPServer" -> "HTTP", "Server")
+            for(String word : part.split("(?<=[a-z0-9])(?=[A-Z])|(?<=[A-Z])(?=[A-Z][a-z])")){
+                if(!word.isEmpty()){
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * sanitizes the names of the system in place
+     * @param toSanitize the system, its modules, entities and fields are changed
+     * @see #sanitizedCopy(Module, String, Map)
+     */
     public static void sanitizeSystemContext(SystemContext toSanitize){
         for(Module m : toSanitize.getModules()){
             m.setName(new Name(getBasicName(m.getName().getName())));
@@ -22,4 +52,59 @@ public class NameStripper {
             }
         }
     }
+
+    /**
+     * copies a module with sanitized names in one pass, leaving the module given unchanged
+     * @param module the module to copy
+     * @param originalNames receives the original full names of what was renamed, keyed by the module's full name
+     * @return the copy
+     * @see #sanitizedCopy(Module, String, Map)
+     */
+    public static Module sanitizedCopy(Module module, Map<String, String> originalNames){
+        return sanitizedCopy(module, module.getName().getName(), originalNames);
+    }
+
+    /**
+     * copies a module with sanitized names in one pass, leaving the module given unchanged
+     * @param module the module to copy
+     * @param moduleId names the module apart from every other module of the system, even where sanitized names collide
+     * @param originalNames receives the original full name of the module and of every entity and field that was
+     *                      renamed, keyed by the module id ("id", "id::Entity" or "id::Entity::field"). Must be safe to
+     *                      use from many threads if modules are copied in parallel
+     * @return the copy
+     */
+    public static Module sanitizedCopy(Module module, String moduleId, Map<String, String> originalNames){
+        String moduleName = getBasicName(module.getName().getName());
+        record(originalNames, moduleId, moduleName, module.getName().getName());
+
+        Module copy = module.clone();
+        copy.setName(new Name(moduleName));
+
+        // names are part of the hash of entities and fields, so the sets are rebuilt after renaming
+        Set<Entity> entities = new HashSet<>(2 * copy.getEntities().size());
+        for(Entity e : copy.getEntities()){
+            String entityName = e.getEntityName().getName();
+            record(originalNames, moduleId + "::" + entityName, entityName, e.getEntityName().getFullName());
+            e.getEntityName().setFullName(entityName);
+
+            Set<Field> fields = new HashSet<>(2 * e.getFields().size());
+            for(Field f : e.getFields()){
+                String original = f.getName().getFullName();
+                String fieldName = getBasicName(f.getName().getName());
+                f.getName().setFullName(fieldName);
+                record(originalNames, moduleId + "::" + entityName + "::" + fieldName, fieldName, original);
+                fields.add(f);
+            }
+            e.setFields(fields);
+            entities.add(e);
+        }
+        copy.setEntities(entities);
+        return copy;
+    }
+
+    private static void record(Map<String, String> originalNames, String key, String sanitized, String original){
+        if(original != null && !original.equals(sanitized)){
+            originalNames.putIfAbsent(key, original);
+        }
+    }
 }
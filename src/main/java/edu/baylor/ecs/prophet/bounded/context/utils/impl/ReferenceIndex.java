@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Entity;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Field;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+
+import java.util.*;
+
+/**
+ * which entities reference which, kept up to date as entities are merged
+ * <p>
+ * entities are keyed by the name of the module holding them and their own name ("module::Entity"), so entities of the
+ * same name in different modules stay apart. A reference field points at the entity named by the last part of its
+ * type, in the module of the referring entity if it has one of that name and otherwise in the first module added that
+ * does. When an entity is merged into another, or moves to another module or name, its key becomes an alias of the key
+ * of the result, so references to it can be rewritten at the end by visiting only the entities that referenced a
+ * merged key. Modules whose sanitized names collide share keys, like they share name prefixes.
+ */
+final class ReferenceIndex {
+
+    // key to the keys it references
+    private final Map<String, Set<String>> outbound = new HashMap<>();
+
+    // key to the keys of the entities that reference it
+    private final Map<String, Set<String>> inbound = new HashMap<>();
+
+    // union find over keys, a merged key points towards the key of the entity it was merged into
+    private final Map<String, String> alias = new HashMap<>();
+
+    // the first key added for each entity name, where references outside their own module point
+    private final Map<String, String> firstByName = new HashMap<>();
+
+    // references added but not yet resolved to keys, as the module of the referrer, its key and the target name
+    private final List<String[]> unresolved = new ArrayList<>();
+
+    /**
+     * @return the key of the entity of the given name in the module of the given name
+     */
+    static String key(String module, String entity){
+        return module + "::" + entity;
+    }
+
+    /**
+     * @return the entity name part of a key
+     */
+    private static String entityName(String key){
+        return key.substring(key.indexOf("::") + 2);
+    }
+
+    /**
+     * adds the references of every entity of the module, they are resolved once every module is added
+     * @param module the sanitized module
+     */
+    void add(Module module){
+        String moduleName = module.getName().getName();
+        for (Entity entity : module.getEntities()) {
+            String key = key(moduleName, entity.getEntityName().getName());
+            firstByName.putIfAbsent(entity.getEntityName().getName(), key);
+            outbound.computeIfAbsent(key, k -> new HashSet<>());
+            for (Field field : entity.getFields()) {
+                if (field.isReference()) {
+                    unresolved.add(new String[]{moduleName, key, target(field)});
+                }
+            }
+        }
+    }
+
+    /**
+     * points the references added so far at the keys of their targets
+     */
+    private void link(){
+        for (String[] reference : unresolved) {
+            String local = key(reference[0], reference[2]);
+            String target = outbound.containsKey(local) ? local : firstByName.getOrDefault(reference[2], local);
+            outbound.get(reference[1]).add(target);
+            inbound.computeIfAbsent(target, k -> new HashSet<>()).add(reference[1]);
+        }
+        unresolved.clear();
+    }
+
+    /**
+     * @return the name of the entity a reference field points at
+     */
+    static String target(Field field){
+        return NameStripper.getBasicName(field.getType());
+    }
+
+    /**
+     * records that an entity was merged into another, or moved to another key
+     * @param kept the key of the result
+     * @param absorbed the key of the entity merged into it
+     */
+    void merged(String kept, String absorbed){
+        link();
+        String keptRoot = resolve(kept);
+        String absorbedRoot = resolve(absorbed);
+        if (keptRoot.equals(absorbedRoot)) {
+            return;
+        }
+        alias.put(absorbedRoot, keptRoot);
+        Set<String> references = outbound.get(absorbedRoot);
+        if (references != null) {
+            outbound.computeIfAbsent(keptRoot, k -> new HashSet<>()).addAll(references);
+        }
+    }
+
+    /**
+     * @return the key the entity of the given key was last merged into, the key itself if it was not merged
+     */
+    String resolve(String key){
+        String root = key;
+        while (alias.containsKey(root)) {
+            root = alias.get(root);
+        }
+        // point the path straight at the root so later lookups are short
+        String current = key;
+        while (!current.equals(root)) {
+            String next = alias.get(current);
+            alias.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    /**
+     * how much two entities reference the same entities, after merges
+     * @return the jaccard similarity of the entities they reference, 0 if neither references anything
+     */
+    double overlap(String one, String two){
+        link();
+        Set<String> first = resolvedOutbound(one);
+        Set<String> second = resolvedOutbound(two);
+        if (first.isEmpty() && second.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String target : first) {
+            if (second.contains(target)) {
+                common++;
+            }
+        }
+        return (double) common / (first.size() + second.size() - common);
+    }
+
+    private Set<String> resolvedOutbound(String key){
+        Set<String> references = outbound.get(resolve(key));
+        if (references == null) {
+            return Collections.emptySet();
+        }
+        Set<String> resolved = new HashSet<>(references.size() * 2);
+        for (String target : references) {
+            resolved.add(resolve(target));
+        }
+        return resolved;
+    }
+
+    /**
+     * points the reference fields of the entities at the entities their targets were merged into
+     * <p>
+     * only the entities that referenced a merged key are visited. A reference is left alone if an entity of the name
+     * it has is still in the result.
+     * @param module the name the final entities are keyed under
+     * @param entities the final entities, their reference fields are replaced
+     * @return the number of fields rewritten
+     */
+    int rewrite(String module, Collection<Entity> entities){
+        link();
+        if (alias.isEmpty() || entities == null) {
+            return 0;
+        }
+        Map<String, List<Entity>> byKey = new HashMap<>();
+        for (Entity entity : entities) {
+            byKey.computeIfAbsent(key(module, entity.getEntityName().getName()), k -> new ArrayList<>()).add(entity);
+        }
+
+        int rewritten = 0;
+        for (String merged : new ArrayList<>(alias.keySet())) {
+            String root = resolve(merged);
+            String from = entityName(merged);
+            String to = entityName(root);
+            if (from.equals(to) || byKey.containsKey(key(module, from)) || !byKey.containsKey(root)) {
+                continue;
+            }
+            Set<String> referrers = inbound.getOrDefault(merged, Collections.emptySet());
+            Set<String> visited = new HashSet<>();
+            for (String referrer : referrers) {
+                String owner = resolve(referrer);
+                if (!visited.add(owner)) {
+                    continue;
+                }
+                for (Entity entity : byKey.getOrDefault(owner, Collections.emptyList())) {
+                    rewritten += retarget(entity, from, to);
+                }
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * replaces the reference fields of the entity that point at one name with fields pointing at another
+     */
+    private static int retarget(Entity entity, String from, String to){
+        List<Field> replaced = new ArrayList<>();
+        // keeps the order of the fields, which matters in deterministic mode
+        Set<Field> fields = new LinkedHashSet<>(entity.getFields().size() * 2);
+        for (Field field : entity.getFields()) {
+            if (field.isReference() && target(field).equals(from)) {
+                String type = field.getType();
+                int at = type.lastIndexOf(from);
+                Field copy = new Field(type.substring(0, at) + to + type.substring(at + from.length()), field.getName().getName());
+                copy.getName().setFullName(field.getName().getFullName());
+                copy.setReference(true);
+                copy.setCollection(field.isCollection());
+                copy.setAnnotations(field.getAnnotations() == null ? null : new LinkedHashSet<>(field.getAnnotations()));
+                replaced.add(copy);
+                fields.add(copy);
+            } else {
+                fields.add(field);
+            }
+        }
+        if (!replaced.isEmpty()) {
+            entity.setFields(fields);
+        }
+        return replaced.size();
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+/**
+ * selection helpers shared by the {@link edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix} implementations
+ */
+final class SimilarityMatrixSupport {
+
+    private SimilarityMatrixSupport(){}
+
+    /**
+     * checks if candidate a ranks before candidate b
+     * @return true if a has the higher score, or the same score and the lower column
+     */
+    static boolean ranksBefore(double scoreA, int columnA, double scoreB, int columnB){
+        return scoreA > scoreB || (scoreA == scoreB && columnA < columnB);
+    }
+
+    /**
+     * selects the k best candidates of a row
+     * @param columns the column of each candidate
+     * @param scores the score of each candidate
+     * @param length the number of candidates
+     * @param k the maximum number of candidates to select
+     * @return the selected columns, best first
+     */
+    static int[] selectTopK(int[] columns, double[] scores, int length, int k){
+        int size = Math.max(0, Math.min(k, length));
+        int[] selectedColumns = new int[size];
+        double[] selectedScores = new double[size];
+        int count = 0;
+
+        for(int i = 0; i < length; i++){
+            int column = columns[i];
+            double score = scores[i];
+
+            // skip if it does not beat the worst selected candidate
+            if(count == size){
+                if(size == 0 || !ranksBefore(score, column, selectedScores[count - 1], selectedColumns[count - 1])){
+                    continue;
+                }
+                count--;
+            }
+
+            // insertion into the sorted selection
+            int pos = count;
+            while(pos > 0 && ranksBefore(score, column, selectedScores[pos - 1], selectedColumns[pos - 1])){
+                selectedColumns[pos] = selectedColumns[pos - 1];
+                selectedScores[pos] = selectedScores[pos - 1];
+                pos--;
+            }
+            selectedColumns[pos] = column;
+            selectedScores[pos] = score;
+            count++;
+        }
+
+        return selectedColumns;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the name similarity of every candidate pair of entities from different modules of a system, scored once
+ * <p>
+ * merge outcomes for any cutoff can be evaluated from the profile without rescoring. {@link #evaluate} joins the
+ * entities the same way the global merge strategy does, so its groups are the entities that strategy would produce.
+ * Pairs are stored in columns (first entity, second entity, similarity) and can be exported as csv or as a compact
+ * binary file that {@link #readBinary} loads back.
+ */
+public class SimilarityProfile {
+
+    // "BCSP" followed by the format version
+    private static final int MAGIC = 0x42435350;
+
+    private static final int VERSION = 1;
+
+    private final List<String> moduleNames;
+
+    private final int[] moduleOf;
+
+    private final List<String> entityNames;
+
+    private int pairCount = 0;
+
+    private int[] first = new int[16];
+
+    private int[] second = new int[16];
+
+    private double[] similarity = new double[16];
+
+    /**
+     * @param moduleNames the names of the modules
+     * @param moduleOf the index of the module of each entity
+     * @param entityNames the name of each entity
+     */
+    SimilarityProfile(List<String> moduleNames, int[] moduleOf, List<String> entityNames){
+        if (moduleOf.length != entityNames.size()) {
+            throw new IllegalArgumentException("every entity needs a module");
+        }
+        this.moduleNames = new ArrayList<>(moduleNames);
+        this.moduleOf = moduleOf.clone();
+        this.entityNames = new ArrayList<>(entityNames);
+    }
+
+    /**
+     * records the similarity of two entities
+     */
+    void add(int one, int two, double score){
+        if (pairCount == first.length) {
+            int capacity = 2 * pairCount;
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            similarity = Arrays.copyOf(similarity, capacity);
+        }
+        first[pairCount] = one;
+        second[pairCount] = two;
+        similarity[pairCount] = score;
+        pairCount++;
+    }
+
+    public List<String> getModuleNames(){
+        return Collections.unmodifiableList(moduleNames);
+    }
+
+    public int getEntityCount(){
+        return entityNames.size();
+    }
+
+    public String getEntityName(int entity){
+        return entityNames.get(entity);
+    }
+
+    public int getModule(int entity){
+        return moduleOf[entity];
+    }
+
+    public int getPairCount(){
+        return pairCount;
+    }
+
+    public int getFirst(int pair){
+        return first[checkPair(pair)];
+    }
+
+    public int getSecond(int pair){
+        return second[checkPair(pair)];
+    }
+
+    public double getSimilarity(int pair){
+        return similarity[checkPair(pair)];
+    }
+
+    private int checkPair(int pair){
+        if (pair < 0 || pair >= pairCount) {
+            throw new IndexOutOfBoundsException("pair " + pair + " of " + pairCount);
+        }
+        return pair;
+    }
+
+    /**
+     * groups the entities as they would be merged with the given cutoff
+     * @param cutoff pairs more similar than this are merged
+     * @return the groups
+     */
+    public Outcome evaluate(double cutoff){
+        DisjointSets groups = new DisjointSets(entityNames.size());
+        for (int p = 0; p < pairCount; p++) {
+            if (similarity[p] > cutoff) {
+                groups.union(first[p], second[p]);
+            }
+        }
+
+        // number the groups in the order of their first entity
+        int[] groupOf = new int[entityNames.size()];
+        int[] groupOfRoot = new int[entityNames.size()];
+        Arrays.fill(groupOfRoot, -1);
+        int groupCount = 0;
+        for (int e = 0; e < groupOf.length; e++) {
+            int root = groups.find(e);
+            if (groupOfRoot[root] < 0) {
+                groupOfRoot[root] = groupCount++;
+            }
+            groupOf[e] = groupOfRoot[root];
+        }
+        return new Outcome(cutoff, groupOf, groupCount);
+    }
+
+    /**
+     * the merge outcome for one cutoff
+     */
+    public static class Outcome {
+
+        private final double cutoff;
+
+        private final int[] groupOf;
+
+        private final int groupCount;
+
+        private Outcome(double cutoff, int[] groupOf, int groupCount){
+            this.cutoff = cutoff;
+            this.groupOf = groupOf;
+            this.groupCount = groupCount;
+        }
+
+        public double getCutoff(){
+            return cutoff;
+        }
+
+        /**
+         * @return the number of entities after merging
+         */
+        public int getGroupCount(){
+            return groupCount;
+        }
+
+        /**
+         * @return the group of an entity, groups are numbered in the order of their first entity
+         */
+        public int getGroup(int entity){
+            return groupOf[entity];
+        }
+
+        /**
+         * @return the number of entities that are merged with at least one other entity
+         */
+        public int getMergedEntityCount(){
+            int[] sizes = new int[groupCount];
+            for (int group : groupOf) {
+                sizes[group]++;
+            }
+            int merged = 0;
+            for (int size : sizes) {
+                if (size > 1) {
+                    merged += size;
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * writes one line per pair: the module and name of both entities and their similarity
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("firstModule,firstEntity,secondModule,secondEntity,similarity\n");
+        for (int p = 0; p < pairCount; p++) {
+            out.write(csv(moduleNames.get(moduleOf[first[p]])));
+            out.write(',');
+            out.write(csv(entityNames.get(first[p])));
+            out.write(',');
+            out.write(csv(moduleNames.get(moduleOf[second[p]])));
+            out.write(',');
+            out.write(csv(entityNames.get(second[p])));
+            out.write(',');
+            out.write(Double.toString(similarity[p]));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static String csv(String value){
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * writes the names followed by each column of pairs in turn
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writeBinary(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(moduleNames.size());
+        for (String name : moduleNames) {
+            data.writeUTF(name);
+        }
+        data.writeInt(entityNames.size());
+        for (int e = 0; e < entityNames.size(); e++) {
+            data.writeInt(moduleOf[e]);
+            data.writeUTF(entityNames.get(e));
+        }
+        data.writeInt(pairCount);
+        for (int p = 0; p < pairCount; p++) {
+            data.writeInt(first[p]);
+        }
+        for (int p = 0; p < pairCount; p++) {
+            data.writeInt(second[p]);
+        }
+        for (int p = 0; p < pairCount; p++) {
+            data.writeDouble(similarity[p]);
+        }
+        data.flush();
+    }
+
+    /**
+     * reads a profile written by {@link #writeBinary}
+     * @param in where to read from
+     * @return the profile
+     * @throws IOException if reading fails or the data is not a profile
+     */
+    public static SimilarityProfile readBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("not a similarity profile");
+        }
+        int modules = data.readInt();
+        List<String> moduleNames = new ArrayList<>(modules);
+        for (int m = 0; m < modules; m++) {
+            moduleNames.add(data.readUTF());
+        }
+        int entities = data.readInt();
+        int[] moduleOf = new int[entities];
+        List<String> entityNames = new ArrayList<>(entities);
+        for (int e = 0; e < entities; e++) {
+            moduleOf[e] = data.readInt();
+            entityNames.add(data.readUTF());
+        }
+        SimilarityProfile profile = new SimilarityProfile(moduleNames, moduleOf, entityNames);
+        int pairs = data.readInt();
+        profile.first = new int[Math.max(1, pairs)];
+        profile.second = new int[Math.max(1, pairs)];
+        profile.similarity = new double[Math.max(1, pairs)];
+        for (int p = 0; p < pairs; p++) {
+            profile.first[p] = data.readInt();
+        }
+        for (int p = 0; p < pairs; p++) {
+            profile.second[p] = data.readInt();
+        }
+        for (int p = 0; p < pairs; p++) {
+            profile.similarity[p] = data.readDouble();
+        }
+        profile.pairCount = pairs;
+        return profile;
+    }
+}
@@ -7,7 +7,11 @@ package edu.baylor.ecs.prophet.bounded.context.utils.impl;
 
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Entity;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Field;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
 
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
 import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityUtils;
 import edu.cmu.lti.jawjaw.pobj.POS;
 import edu.cmu.lti.lexical_db.ILexicalDatabase;
@@ -20,7 +24,6 @@ import edu.cmu.lti.ws4j.util.WS4JConfiguration;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Ian Laird
@@ -30,6 +33,11 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
     // used for finding Wu Palmer similarity *******************
     private static ILexicalDatabase db = new NictWordNet();
     private static RelatednessCalculator rc = new WuPalmer(db);
+    private static WordNetVocabulary vocabulary = new WordNetVocabulary(db);
+
+    static {
+        WS4JConfiguration.getInstance().setMFS(true);
+    }
     // *********************************************************
 
     /**
@@ -50,6 +58,81 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
     // stores last computer entity similarity to try and short circuit computation
     private EntitySimilarity lastComputedEntitySimilarity = new EntitySimilarity();
 
+    // the number of candidates kept per field when aligning fields, 0 for all
+    private final int candidateLimit;
+
+    // entities less similar than this are not aligned
+    private final double entitySimilarityCutoff;
+
+    // whether the features of every field are kept for a run, not within a memory budget
+    private final boolean keepFields;
+
+    // encodes the fields of the current run, see startRun
+    private FieldFeatures.Encoder encoder;
+
+    // how many name pairs are remembered per mode in a run
+    private static final int NAME_PAIR_LIMIT = 1 << 16;
+
+    // the similarity of the field names compared in the current run, per mode, by the ids of the two names
+    private final Map<SimilarityMode, Map<Long, Double>> namePairs = new EnumMap<>(SimilarityMode.class);
+
+    public SimilarityUtilsImpl(){
+        this(new BoundedContextConfig());
+    }
+
+    /**
+     * @param config the options that affect similarity
+     */
+    public SimilarityUtilsImpl(BoundedContextConfig config){
+        this.candidateLimit = config.getCandidateLimit();
+        this.entitySimilarityCutoff = config.getEntitySimilarityCutoff();
+        this.keepFields = !config.isMemoryBounded();
+        this.encoder = new FieldFeatures.Encoder(false);
+    }
+
+    /**
+     * starts a run, forgetting the fields and names of earlier runs and encoding the fields of the modules ahead of
+     * merging so each is encoded once
+     * @param modules the sanitized modules of the run
+     */
+    void startRun(Collection<Module> modules){
+        encoder = new FieldFeatures.Encoder(keepFields);
+        namePairs.clear();
+        if (!keepFields) {
+            return;
+        }
+        for (Module module : modules) {
+            for (Entity entity : module.getEntities()) {
+                for (Field field : entity.getFields()) {
+                    encoder.encode(field);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ordinal of the type of the field, resolved once per run
+     */
+    int typeOrdinal(Field field){
+        return encoder.typeOrdinal(field);
+    }
+
+    /**
+     * @return the similarity of the names with the given ids, remembered for the run
+     */
+    private double namePairSimilarity(FieldFeatures one, FieldFeatures two, SimilarityMode mode){
+        Map<Long, Double> pairs = namePairs.computeIfAbsent(mode, m -> new HashMap<>());
+        Long pair = ((long) one.nameId << 32) | two.nameId;
+        Double similarity = pairs.get(pair);
+        if (similarity == null) {
+            similarity = nameSimilarity(encoder.name(one.nameId), encoder.name(two.nameId), mode);
+            if (pairs.size() < NAME_PAIR_LIMIT) {
+                pairs.put(pair, similarity);
+            }
+        }
+        return similarity;
+    }
+
     /**
      * finds the similarity between two fields
      * @param fieldOne the first field to compare
@@ -57,9 +140,9 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
      * @return the similarity of the fields
      */
     @Override
-    public double localFieldSimilarity(Field fieldOne, Field fieldTwo, boolean useWuPalmer) {
-        //TODO is this good enough?
-        return nameSimilarity(fieldOne.getName().getName(), fieldTwo.getName().getName(), useWuPalmer);
+    public double localFieldSimilarity(Field fieldOne, Field fieldTwo, SimilarityMode mode) {
+        return FieldFeatures.similarity(encoder.encode(fieldOne), encoder.encode(fieldTwo),
+                nameSimilarity(fieldOne.getName().getName(), fieldTwo.getName().getName(), mode));
     }
 
     /**
@@ -69,7 +152,7 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
      * @return tuple of similarity of the entities as well as the mapping between their fields
      */
     @Override
-    public ImmutablePair<Double, Map<Field, Field> > globalFieldSimilarity(Entity entityOne, Entity entityTwo, boolean useWuPalmer) {
+    public ImmutablePair<Double, Map<Field, Field> > globalFieldSimilarity(Entity entityOne, Entity entityTwo, SimilarityMode mode) {
         //store the result of the last comp
         // intentionally using == here instead of equals because we only short circuit for exact objects
         if(entityOne == lastComputedEntitySimilarity.entityOne && entityTwo == lastComputedEntitySimilarity.entityTwo){
@@ -77,8 +160,8 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
         }
 
         // if the entity names are too dissimilar then dont try
-        double nameSimilarity = nameSimilarity(entityOne.getEntityName().getName(), entityTwo.getEntityName().getName(), useWuPalmer);
-        if(nameSimilarity < BoundedContextUtilsImpl.ENTITY_SIMILARITY_CUTOFF){
+        double nameSimilarity = nameSimilarity(entityOne.getEntityName().getName(), entityTwo.getEntityName().getName(), mode);
+        if(nameSimilarity < entitySimilarityCutoff){
             return new ImmutablePair<>(nameSimilarity, new HashMap<>());
         }
 
@@ -87,85 +170,37 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
             return new ImmutablePair<>(nameSimilarity, new HashMap<>());
         }
 
-        // for each field find the similarity they have to other fields
-        final Map<Field, TreeMap<Double, Field>>  fieldSimilarity = new HashMap<>();
-
-        // get each field in entity one
-        entityOne.getFields()
-                // for each field put
-                .forEach(x -> fieldSimilarity.put(
-                        // that field
-                        x,
-                        // and a map of fields and similarity
-                        entityTwo.getFields()
-                                .stream()
-                                .collect(Collectors.toMap(
-                                        // the similarity of field one and field 2
-                                        y -> localFieldSimilarity(x, y, useWuPalmer),
-                                        // field 2
-                                        y -> y,
-                                        (oldValue,newValue) -> newValue,
-                                        // using tree map so that it is sorted
-                                        TreeMap::new
-                                ))
-                ));
-
-        boolean changeOccurred = true;
-
-        // keep going until no two fields map to the same field
-        // this is really slow
-        while(changeOccurred){
-            changeOccurred = false;
-            Map<Field, ImmutablePair<Double, TreeMap<Double, Field>>> encountered = new HashMap<>();
-            for(Map.Entry<Field, TreeMap<Double, Field>> entry : fieldSimilarity.entrySet()){
-                boolean repeat = true;
-
-                // this will always execute at least once
-                while(repeat) {
-                    repeat = false;
-
-                    //get the similarity and field that are best from entity two for this field in entity one
-                    Map.Entry<Double, Field> bestEntry = entry.getValue().lastEntry();
-                    if(Objects.nonNull(bestEntry)) {
-                        Field best = bestEntry.getValue();
-                        Double val = bestEntry.getKey();
-
-                        // see if a field already maps to this field
-                        if (encountered.containsKey(best)) {
-
-                            // if this one is better then remove the old one and restart the whole algorithm
-                            if (val > encountered.get(best).getLeft()) {
-                                encountered.get(best).getRight().values().removeIf(x -> x.equals(best));
-                                encountered.put(best, new ImmutablePair<>(val, entry.getValue()));
-                                changeOccurred = true;
-                                break;
-                            }
-                            // if the other one is better then remove this one and get the next best mapping
-                            else {
-                                entry.getValue().remove(val);
-                                repeat = true;
-                            }
-                        }else{
-                            encountered.put(best, new ImmutablePair<>(val, entry.getValue()));
-                        }
-                    }
-                }
-                if(changeOccurred){
-                    encountered.clear();
-                    break;
-                }
+        List<Field> fieldsOne = new ArrayList<>(entityOne.getFields());
+        List<Field> fieldsTwo = new ArrayList<>(entityTwo.getFields());
+
+        // fields are encoded once per run and name pairs are compared once per run
+        FieldFeatures[] featuresOne = new FieldFeatures[fieldsOne.size()];
+        for(int i = 0; i < featuresOne.length; i++){
+            featuresOne[i] = encoder.encode(fieldsOne.get(i));
+        }
+        FieldFeatures[] featuresTwo = new FieldFeatures[fieldsTwo.size()];
+        for(int j = 0; j < featuresTwo.length; j++){
+            featuresTwo[j] = encoder.encode(fieldsTwo.get(j));
+        }
+
+        // for each field find the similarity it has to the other fields
+        SimilarityMatrix fieldSimilarity = candidateLimit > 0
+                ? new BoundedSimilarityMatrix(fieldsOne.size(), fieldsTwo.size(), candidateLimit)
+                : new SparseSimilarityMatrix(fieldsOne.size(), fieldsTwo.size());
+        for(int i = 0; i < featuresOne.length; i++){
+            for(int j = 0; j < featuresTwo.length; j++){
+                fieldSimilarity.set(i, j, FieldFeatures.similarity(featuresOne[i], featuresTwo[j], namePairSimilarity(featuresOne[i], featuresTwo[j], mode)));
             }
         }
 
-        // get the average of the field similarity
-        // Double similarity = fieldSimilarity.entrySet().stream().mapToDouble(entry -> entry.getValue().isEmpty() ? 0.0 : entry.getValue().lastKey()).average().getAsDouble();
+        // no two fields may map to the same field
+        int[] assignment = stableAssignment(fieldSimilarity);
 
         Map<Field, Field> fieldMap = new HashMap<>();
         // get the field mapping
-        fieldSimilarity
-            .entrySet()
-            .stream()
-                .forEach(x -> fieldMap.put(x.getKey(),  x.getValue().isEmpty() ? null : x.getValue().lastEntry().getValue()));
+        for(int i = 0; i < fieldsOne.size(); i++){
+            fieldMap.put(fieldsOne.get(i), assignment[i] < 0 ? null : fieldsTwo.get(assignment[i]));
+        }
 
         // compute the return value
         ImmutablePair<Double, Map<Field, Field> > toReturn = new ImmutablePair<>(nameSimilarity, fieldMap);
@@ -177,24 +212,99 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
         return toReturn;
     }
 
+    /**
+     * maps each row to at most one column so that no two rows share a column
+     * <p>
+     * each row proposes to its candidates from best to worst. A column keeps the row with the higher similarity and
+     * on ties keeps the row it already has, the displaced row moves on to its next candidate.
+     * @param similarity the similarity matrix
+     * @return the column assigned to each row, -1 if it has none
+     */
+    static int[] stableAssignment(SimilarityMatrix similarity){
+        int rows = similarity.rows();
+        int[] assignment = new int[rows];
+        int[] holder = new int[similarity.columns()];
+        Arrays.fill(assignment, -1);
+        Arrays.fill(holder, -1);
+
+        int[][] preferences = new int[rows][];
+        int[] next = new int[rows];
+
+        // rows still looking for a column, row 0 on top
+        int[] free = new int[rows];
+        int freeCount = 0;
+        for(int row = rows - 1; row >= 0; row--){
+            preferences[row] = similarity.topK(row, similarity.columns());
+            free[freeCount++] = row;
+        }
+
+        while(freeCount > 0){
+            int row = free[--freeCount];
+
+            // no candidates left so this row stays unmapped
+            if(next[row] >= preferences[row].length){
+                continue;
+            }
+
+            int column = preferences[row][next[row]++];
+            int current = holder[column];
+            if(current < 0){
+                holder[column] = row;
+                assignment[row] = column;
+            } else if(similarity.get(row, column) > similarity.get(current, column)){
+                holder[column] = row;
+                assignment[row] = column;
+                assignment[current] = -1;
+                free[freeCount++] = current;
+            } else {
+                free[freeCount++] = row;
+            }
+        }
+
+        return assignment;
+    }
+
     /**
      * finds the similarity of two names (i.e. nouns)
      * @param one the first name to compare
      * @param two the second name to compare
-     * @return the Wu Palmer similarity of these names
+     * @param mode how the names are compared
+     * @return the similarity of these names
      */
     @Override
-    public double nameSimilarity(String one, String two, boolean useWuPalmer) {
-        if(useWuPalmer) return  wuPalmerWordSimilarity(NameStripper.getBasicName(one), POS.n, NameStripper.getBasicName(two), POS.n);
-        else return basicWordSimilarity(NameStripper.getBasicName(one), NameStripper.getBasicName(two));
+    public double nameSimilarity(String one, String two, SimilarityMode mode) {
+        switch (mode) {
+            case WU_PALMER:
+                return wuPalmerWordSimilarity(NameStripper.getBasicName(one), POS.n, NameStripper.getBasicName(two), POS.n);
+            case EMBEDDING:
+                return embeddingWordSimilarity(NameStripper.getBasicName(one), NameStripper.getBasicName(two));
+            case LEXICAL:
+                return LexicalSimilarity.similarity(NameStripper.getBasicName(one), NameStripper.getBasicName(two));
+            default:
+                return basicWordSimilarity(NameStripper.getBasicName(one), NameStripper.getBasicName(two));
+        }
     }
 
-
     private static double basicWordSimilarity(String word1, String word2){
         if(word1.equalsIgnoreCase(word2)) return 1.0;
         else return 0.0;
     }
 
+    /**
+     * finds the cosine similarity of the word vectors of two words
+     * @param word1 the first word to compare
+     * @param word2 the second word to compare
+     * @return the similarity clamped to [0, 1], or the basic similarity if either word has no vector
+     */
+    private static double embeddingWordSimilarity(String word1, String word2){
+        if(word1.equalsIgnoreCase(word2)) return 1.0;
+        WordVectors vectors = WordVectors.getDefault();
+        float[] vector1 = vectors.get(word1);
+        float[] vector2 = vectors.get(word2);
+        if(vector1 == null || vector2 == null) return 0.0;
+        return Math.max(0.0, Math.min(1.0, WordVectors.cosine(vector1, vector2)));
+    }
+
     /**
      * finds the wu palmer similarity of two words
      * @param word1 the first word to compare
@@ -205,11 +315,18 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
      */
     // https://blog.thedigitalgroup.com/words-similarityrelatedness-using-wupalmer-algorithm
     private static double wuPalmerWordSimilarity(String word1, POS posWord1, String word2, POS posWord2) {
+        // out of vocabulary words have no concepts, so skip straight to 0
+        List<Concept> synsets1 = vocabulary.concepts(word1, posWord1);
+        if (synsets1.isEmpty()) {
+            return 0.0;
+        }
+        List<Concept> synsets2 = vocabulary.concepts(word2, posWord2);
+        if (synsets2.isEmpty()) {
+            return 0.0;
+        }
+
         double maxScore = 0.0;
         try {
-            WS4JConfiguration.getInstance().setMFS(true);
-            List<Concept> synsets1 = (List < Concept > ) db.getAllConcepts(word1, posWord1.name());
-            List < Concept > synsets2 = (List < Concept > ) db.getAllConcepts(word2, posWord2.name());
             for (Concept synset1: synsets1) {
                 for (Concept synset2: synsets2) {
                     Relatedness relatedness = rc.calcRelatednessOfSynset(synset1, synset2);
@@ -222,4 +339,11 @@ public class SimilarityUtilsImpl implements SimilarityUtils {
         } catch (Exception e) {}
         return maxScore;
     }
+
+    /**
+     * @return the vocabulary used for Wu Palmer, which counts out of vocabulary lookups
+     */
+    public static WordNetVocabulary getWordNetVocabulary(){
+        return vocabulary;
+    }
 }
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
+
+import java.util.Arrays;
+
+/**
+ * {@link SimilarityMatrix} that only stores non zero scores
+ * <p>
+ * with the basic 0/1 similarity almost every field pair scores 0, so only the few real candidates are kept per row.
+ * A cell that was never set (or set to 0) is not a candidate.
+ */
+public class SparseSimilarityMatrix implements SimilarityMatrix {
+
+    private static final int INITIAL_ROW_CAPACITY = 4;
+
+    private final int rows;
+
+    private final int columns;
+
+    // the candidate columns of each row
+    private final int[][] rowColumns;
+
+    // the candidate scores of each row
+    private final double[][] rowScores;
+
+    // the number of candidates in each row
+    private final int[] rowSizes;
+
+    public SparseSimilarityMatrix(int rows, int columns){
+        this.rows = rows;
+        this.columns = columns;
+        this.rowColumns = new int[rows][];
+        this.rowScores = new double[rows][];
+        this.rowSizes = new int[rows];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        int index = indexOf(row, column);
+        return index < 0 ? 0.0 : rowScores[row][index];
+    }
+
+    @Override
+    public void set(int row, int column, double similarity) {
+        if(column < 0 || column >= columns){
+            throw new IndexOutOfBoundsException("column " + column);
+        }
+        int index = indexOf(row, column);
+
+        // zero is not a candidate, so drop the cell
+        if(similarity == 0.0){
+            if(index >= 0){
+                int last = --rowSizes[row];
+                rowColumns[row][index] = rowColumns[row][last];
+                rowScores[row][index] = rowScores[row][last];
+            }
+            return;
+        }
+
+        if(index >= 0){
+            rowScores[row][index] = similarity;
+            return;
+        }
+
+        // grow the row if needed
+        if(rowColumns[row] == null){
+            rowColumns[row] = new int[INITIAL_ROW_CAPACITY];
+            rowScores[row] = new double[INITIAL_ROW_CAPACITY];
+        } else if(rowSizes[row] == rowColumns[row].length){
+            int capacity = rowColumns[row].length * 2;
+            rowColumns[row] = Arrays.copyOf(rowColumns[row], capacity);
+            rowScores[row] = Arrays.copyOf(rowScores[row], capacity);
+        }
+
+        rowColumns[row][rowSizes[row]] = column;
+        rowScores[row][rowSizes[row]] = similarity;
+        rowSizes[row]++;
+    }
+
+    @Override
+    public int best(int row) {
+        int best = -1;
+        for(int i = 0; i < rowSizes[row]; i++){
+            if(best < 0 || SimilarityMatrixSupport.ranksBefore(rowScores[row][i], rowColumns[row][i], rowScores[row][best], rowColumns[row][best])){
+                best = i;
+            }
+        }
+        return best < 0 ? -1 : rowColumns[row][best];
+    }
+
+    @Override
+    public int[] topK(int row, int k) {
+        return SimilarityMatrixSupport.selectTopK(rowColumns[row], rowScores[row], rowSizes[row], k);
+    }
+
+    /**
+     * finds where a column is stored in a row
+     * @return the index in the row arrays, -1 if not present
+     */
+    private int indexOf(int row, int column){
+        for(int i = 0; i < rowSizes[row]; i++){
+            if(rowColumns[row][i] == column){
+                return i;
+            }
+        }
+        return -1;
+    }
+}
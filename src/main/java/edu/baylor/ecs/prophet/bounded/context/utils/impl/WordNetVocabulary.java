@@ -0,0 +1,166 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import edu.cmu.lti.jawjaw.pobj.POS;
+import edu.cmu.lti.lexical_db.ILexicalDatabase;
+import edu.cmu.lti.lexical_db.data.Concept;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * caches which words are in the lexical database
+ * <p>
+ * most field names are compound identifiers that WordNet does not know. Each word is looked up in the database at
+ * most once: the concepts of known words are kept, and unknown words go into a negative cache so that every later
+ * comparison with them returns immediately. ws4j throws for some words it cannot resolve, so a word whose lookup throws
+ * is cached as absent too rather than paying for the exception on every comparison. Both caches keep the most recently
+ * used words up to a fixed capacity.
+ */
+public class WordNetVocabulary {
+
+    // the number of words each cache keeps by default
+    public static final int DEFAULT_CAPACITY = 50_000;
+
+    private final ILexicalDatabase db;
+
+    // concepts of the words that are in the database, keyed by pos and word
+    private final Map<String, List<Concept>> known;
+
+    // words that are not in the database, keyed by pos and word
+    private final Map<String, Boolean> absent;
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder outOfVocabularyLookups = new LongAdder();
+
+    private final LongAdder databaseLookups = new LongAdder();
+
+    private final LongAdder failedLookups = new LongAdder();
+
+    public WordNetVocabulary(ILexicalDatabase db){
+        this(db, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param db the database to look words up in
+     * @param capacity how many words each of the known and absent caches keeps
+     */
+    public WordNetVocabulary(ILexicalDatabase db, int capacity){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.db = db;
+        this.known = leastRecentlyUsed(capacity);
+        this.absent = leastRecentlyUsed(capacity);
+    }
+
+    /**
+     * gets the concepts of a word
+     * @param word the word
+     * @param pos the part of speech of the word
+     * @return the concepts, empty if the word is not in the database or could not be looked up
+     */
+    public List<Concept> concepts(String word, POS pos){
+        lookups.increment();
+        String key = pos.name() + ':' + word;
+
+        if(absent.get(key) != null){
+            outOfVocabularyLookups.increment();
+            return Collections.emptyList();
+        }
+
+        List<Concept> concepts = known.get(key);
+        if(concepts != null){
+            return concepts;
+        }
+
+        concepts = lookup(word, pos);
+        if(concepts.isEmpty()){
+            absent.put(key, Boolean.TRUE);
+            outOfVocabularyLookups.increment();
+        } else {
+            known.put(key, concepts);
+        }
+        return concepts;
+    }
+
+    /**
+     * @return the number of words looked up
+     */
+    public long getLookups(){
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of lookups of words that are not in the database
+     */
+    public long getOutOfVocabularyLookups(){
+        return outOfVocabularyLookups.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that were of words not in the database
+     */
+    public double getOutOfVocabularyRate(){
+        long total = getLookups();
+        return total == 0 ? 0.0 : (double) getOutOfVocabularyLookups() / total;
+    }
+
+    /**
+     * @return the number of times the database itself was queried
+     */
+    public long getDatabaseLookups(){
+        return databaseLookups.sum();
+    }
+
+    /**
+     * @return the number of database queries that threw, each of those words is cached as absent
+     */
+    public long getFailedLookups(){
+        return failedLookups.sum();
+    }
+
+    /**
+     * @return the number of distinct words currently cached as absent
+     */
+    public int getOutOfVocabularyWords(){
+        return absent.size();
+    }
+
+    /**
+     * queries the database once for a word
+     * @return the concepts, empty if the word is unknown or the database threw for it
+     */
+    @SuppressWarnings("unchecked")
+    private List<Concept> lookup(String word, POS pos){
+        databaseLookups.increment();
+        if(word.isEmpty()){
+            return Collections.emptyList();
+        }
+        try {
+            Collection<Concept> concepts = (Collection<Concept>) db.getAllConcepts(word, pos.name());
+            return concepts == null || concepts.isEmpty() ? Collections.emptyList() : new ArrayList<>(concepts);
+        } catch (RuntimeException e) {
+            failedLookups.increment();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return a thread safe map that drops its least recently used entry beyond the capacity
+     */
+    private static <V> Map<String, V> leastRecentlyUsed(int capacity){
+        // access order, so the eldest entry is the least recently used one
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2019, Cloud Innovation Labs, All rights reserved
+ * Version: 1.0
+ */
+
+package edu.baylor.ecs.prophet.bounded.context.utils.impl;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * table of word vectors loaded from a local text file
+ * <p>
+ * the file uses the GloVe / word2vec text layout: one word per line followed by its components separated by spaces.
+ * An optional word2vec header line ("count dimension") is skipped. Vectors are normalized when loaded so that the
+ * cosine similarity of two words is their dot product.
+ * <p>
+ * the default table is read from the file named by the {@value #PATH_PROPERTY} system property, or else from the
+ * {@value #DEFAULT_RESOURCE} classpath resource. If neither exists the table is empty.
+ */
+public class WordVectors {
+
+    public static final String PATH_PROPERTY = "bounded.context.word.vectors";
+
+    public static final String DEFAULT_RESOURCE = "/word-vectors.txt";
+
+    private final Map<String, float[]> vectors;
+
+    private final int dimension;
+
+    private WordVectors(Map<String, float[]> vectors, int dimension){
+        this.vectors = vectors;
+        this.dimension = dimension;
+    }
+
+    /**
+     * holds the default table so that it is only loaded when first used
+     */
+    private static class DefaultHolder {
+        private static final WordVectors INSTANCE = loadDefault();
+    }
+
+    /**
+     * @return the default table
+     */
+    public static WordVectors getDefault(){
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @return a table without any words
+     */
+    public static WordVectors empty(){
+        return new WordVectors(new HashMap<>(), 0);
+    }
+
+    /**
+     * loads a table from a file
+     * @param path the file to read
+     * @return the table
+     * @throws IOException if the file cannot be read
+     */
+    public static WordVectors load(Path path) throws IOException {
+        try(Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+            return load(in);
+        }
+    }
+
+    /**
+     * loads a table
+     * @param in the text to read
+     * @return the table
+     * @throws IOException if the text cannot be read or a line has the wrong dimension
+     */
+    public static WordVectors load(Reader in) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        Map<String, float[]> vectors = new HashMap<>();
+        int dimension = -1;
+        String line;
+        while((line = reader.readLine()) != null){
+            String[] parts = line.trim().split(" +");
+
+            // blank lines and the word2vec header
+            if(parts.length <= 2){
+                continue;
+            }
+
+            if(dimension < 0){
+                dimension = parts.length - 1;
+            } else if(parts.length - 1 != dimension){
+                throw new IOException("expected " + dimension + " components for '" + parts[0] + "' but found " + (parts.length - 1));
+            }
+
+            float[] vector = new float[dimension];
+            for(int i = 0; i < dimension; i++){
+                vector[i] = Float.parseFloat(parts[i + 1]);
+            }
+            if(normalize(vector)){
+                vectors.put(parts[0].toLowerCase(), vector);
+            }
+        }
+        return new WordVectors(vectors, Math.max(dimension, 0));
+    }
+
+    /**
+     * @return the number of components of each vector, 0 for an empty table
+     */
+    public int dimension(){
+        return dimension;
+    }
+
+    /**
+     * @return the number of words in the table
+     */
+    public int size(){
+        return vectors.size();
+    }
+
+    /**
+     * gets the vector of a name
+     * <p>
+     * names that are not in the table are split into words ("serialNumber" -> "serial", "number") and the mean of
+     * the known words is used
+     * @param name the name
+     * @return the unit vector of the name, null if none of its words are known
+     */
+    public float[] get(String name){
+        float[] vector = vectors.get(name.toLowerCase());
+        if(vector != null){
+            return vector;
+        }
+
+        List<String> words = NameStripper.splitIdentifier(name);
+        if(words.size() < 2){
+            return words.isEmpty() ? null : vectors.get(words.get(0));
+        }
+
+        float[] sum = null;
+        for(String word : words){
+            float[] wordVector = vectors.get(word);
+            if(wordVector == null){
+                continue;
+            }
+            if(sum == null){
+                sum = new float[dimension];
+            }
+            for(int i = 0; i < dimension; i++){
+                sum[i] += wordVector[i];
+            }
+        }
+        return sum != null && normalize(sum) ? sum : null;
+    }
+
+    /**
+     * finds the cosine similarity of two unit vectors
+     * @param one the first vector
+     * @param two the second vector
+     * @return the cosine similarity
+     */
+    public static double cosine(float[] one, float[] two){
+        double dot = 0.0;
+        for(int i = 0; i < one.length; i++){
+            dot += one[i] * two[i];
+        }
+        return dot;
+    }
+
+    /**
+     * scales a vector to unit length
+     * @return false if the vector is all zeros
+     */
+    private static boolean normalize(float[] vector){
+        double norm = 0.0;
+        for(float component : vector){
+            norm += component * component;
+        }
+        if(norm == 0.0){
+            return false;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for(int i = 0; i < vector.length; i++){
+            vector[i] *= scale;
+        }
+        return true;
+    }
+
+    private static WordVectors loadDefault(){
+        try {
+            String path = System.getProperty(PATH_PROPERTY);
+            if(path != null){
+                return load(Paths.get(path));
+            }
+            InputStream resource = WordVectors.class.getResourceAsStream(DEFAULT_RESOURCE);
+            if(resource == null){
+                return empty();
+            }
+            try(Reader in = new InputStreamReader(resource, StandardCharsets.UTF_8)){
+                return load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not load word vectors", e);
+        }
+    }
+}
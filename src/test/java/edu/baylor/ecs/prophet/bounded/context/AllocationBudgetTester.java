@@ -0,0 +1,190 @@
+package edu.baylor.ecs.prophet.bounded.context;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
+import edu.baylor.ecs.prophet.bounded.context.utils.MergeStrategy;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedContextUtilsImpl;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * fails when creating a bounded context allocates or retains more than the baselines recorded in
+ * allocation-budgets.properties, plus the margin given there
+ * <p>
+ * run with {@code -Dallocation.record=<file>} to write the measurements to a properties file instead of checking them
+ */
+public class AllocationBudgetTester {
+
+    private static final Properties budgets = new Properties();
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    public static void loadBudgets() throws IOException {
+        try (InputStream in = AllocationBudgetTester.class.getResourceAsStream("/allocation-budgets.properties")) {
+            assertNotNull(in, "allocation-budgets.properties is missing");
+            budgets.load(in);
+        }
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jan", "tsm2", "generated", "generated-global"})
+    @DisplayName("creating a bounded context stays within budget")
+    public void testWithinBudget(String system) throws IOException {
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported(), "per thread allocation is not measurable on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Supplier<SystemContext> input = input(system);
+        BoundedContextConfig config = new BoundedContextConfig();
+        // every task runs on this thread, so its allocation counter sees all of the work
+        config.setExecutionBackend(new CallingThreadBackend());
+        if (system.endsWith("-global")) {
+            config.setMergeStrategy(MergeStrategy.GLOBAL);
+        }
+
+        // the first run loads classes and fills caches
+        new BoundedContextUtilsImpl(config).createBoundedContext(input.get(), SimilarityMode.BASIC);
+
+        SystemContext systemContext = input.get();
+        long baseline = usedHeapAfterGc();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+
+        BoundedContext boundedContext = new BoundedContextUtilsImpl(config).createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        long retained = usedHeapAfterGc() - baseline;
+        // the result stays reachable until here, so it is part of what is retained
+        assertNotNull(boundedContext.getSystemName());
+
+        String record = System.getProperty("allocation.record");
+        if (record != null) {
+            record(Paths.get(record), system, allocated, retained);
+            return;
+        }
+        assertWithinBudget(system + ".allocated", allocated);
+        assertWithinBudget(system + ".retainedHeap", retained);
+    }
+
+    private static void assertWithinBudget(String key, long measured) {
+        String baseline = budgets.getProperty(key);
+        assumeTrue(baseline != null, "no baseline recorded for " + key + ", measured " + measured + " bytes");
+        double margin = Double.parseDouble(budgets.getProperty("margin", "0.25").trim());
+        long slack = Long.parseLong(budgets.getProperty("slack", "0").trim());
+        long budget = (long) (Long.parseLong(baseline.trim()) * (1 + margin)) + slack;
+        assertTrue(measured <= budget, key + " is " + measured + " bytes, baseline is " + baseline.trim() + " and budget " + budget);
+    }
+
+    private static void record(Path file, String system, long allocated, long retained) throws IOException {
+        Properties recorded = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                recorded.load(in);
+            }
+        }
+        recorded.setProperty(system + ".allocated", Long.toString(allocated));
+        recorded.setProperty(system + ".retainedHeap", Long.toString(retained));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            recorded.store(out, "measured by AllocationBudgetTester");
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * runs every task right away on the thread that submits it
+     */
+    private static class CallingThreadBackend implements ExecutionBackend {
+
+        @Override
+        public <T> CompletableFuture<T> submit(Supplier<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        @Override
+        public String getName() {
+            return "calling thread";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Supplier<SystemContext> input(String system) throws FileNotFoundException {
+        if (system.startsWith("generated")) {
+            return () -> generateSystem(40, 30, 10);
+        }
+        String fileName = "src/test/resources/" + system + "_systemContext.json";
+        // fail here rather than inside the supplier
+        FileManager.readSystemContextFromFile(fileName);
+        return () -> {
+            try {
+                return FileManager.readSystemContextFromFile(fileName);
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * builds a system whose modules share entity and field names, so many entities are merged
+     */
+    static SystemContext generateSystem(int modules, int entitiesPerModule, int fieldsPerEntity) {
+        Random random = new Random(42);
+        String[] types = {"int", "long", "string"};
+        Set<Module> moduleSet = new HashSet<>();
+        for (int m = 0; m < modules; m++) {
+            Module module = new Module("com.example.service" + m);
+            Set<Entity> entities = new HashSet<>();
+            for (int e = 0; e < entitiesPerModule; e++) {
+                Entity entity = new Entity("Entity" + random.nextInt(2 * entitiesPerModule));
+                Set<Field> fields = new HashSet<>();
+                for (int f = 0; f < fieldsPerEntity; f++) {
+                    fields.add(new Field(types[random.nextInt(types.length)], "field" + random.nextInt(4 * fieldsPerEntity)));
+                }
+                entity.setFields(fields);
+                entities.add(entity);
+            }
+            module.setEntities(entities);
+            moduleSet.add(module);
+        }
+        return new SystemContext("generated", moduleSet);
+    }
+}
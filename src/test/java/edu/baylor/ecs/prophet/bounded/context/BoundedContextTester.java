@@ -1,10 +1,37 @@
 package edu.baylor.ecs.prophet.bounded.context;
 
+import com.google.gson.Gson;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
 import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+import edu.baylor.ecs.prophet.bounded.context.api.BoundedContextApi;
+import edu.baylor.ecs.prophet.bounded.context.api.impl.BoundedContextApiImpl;
+import edu.baylor.ecs.prophet.bounded.context.cli.BoundedContextCli;
 import edu.baylor.ecs.prophet.bounded.context.exception.FieldMappingException;
+import edu.baylor.ecs.prophet.bounded.context.execution.ExecutionBackend;
+import edu.baylor.ecs.prophet.bounded.context.profiling.StageProfiler;
+import edu.baylor.ecs.prophet.bounded.context.server.BoundedContextServer;
+import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextConfig;
 import edu.baylor.ecs.prophet.bounded.context.utils.BoundedContextUtils;
+import edu.baylor.ecs.prophet.bounded.context.utils.MergeStrategy;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityUtils;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMatrix;
 import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedContextUtilsImpl;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedSimilarityMatrix;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.ContentHash;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.DenseSimilarityMatrix;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.EmbeddingIndex;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.EntityDeduplicator;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.LexicalSimilarity;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.NameStripper;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.SimilarityProfile;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.SimilarityUtilsImpl;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.SparseSimilarityMatrix;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.WordNetVocabulary;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.WordVectors;
+import edu.cmu.lti.jawjaw.pobj.POS;
+import edu.cmu.lti.lexical_db.ILexicalDatabase;
+import edu.cmu.lti.lexical_db.data.Concept;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -13,7 +40,23 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.*;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -194,6 +237,26 @@ public class BoundedContextTester {
 
                 assertEquals(result.getAnnotations(), ExpectedResult.getAnnotations());
             }
+
+            @Test
+            @DisplayName("merged fields are left unchanged")
+            public void testInputsUnchanged(){
+                Field field = new Field("int", "foo");
+                Field field2 = new Field("long", "foo");
+
+                Annotation ann1 = new Annotation("annotationOne", "", 1);
+                Annotation ann2 = new Annotation("annotationTwo", "", 2);
+
+                field.setAnnotations(new HashSet<>(Collections.singletonList(ann1)));
+                field2.setAnnotations(new HashSet<>(Collections.singletonList(ann2)));
+
+                Field result = boundedContextUtils.mergeFields(field, field2);
+
+                assertEquals(2, result.getAnnotations().size());
+                assertEquals(Collections.singleton(ann1), field.getAnnotations());
+                assertEquals(Collections.singleton(ann2), field2.getAnnotations());
+                assertNotSame(field.getAnnotations(), result.getAnnotations());
+            }
         }
 
     }
@@ -270,6 +333,55 @@ public class BoundedContextTester {
 
     }
 
+    @Nested
+    @DisplayName("N-way Entity Merging")
+    public class NWayMergingTests{
+
+        @Test
+        @DisplayName("two entities match the binary merge")
+        public void testMatchesBinary(){
+            HashMap<Field, Field> fieldMapping = new HashMap<>();
+            Iterator<Field> dogIter = dogEntity.getFields().iterator();
+            fieldMapping.put(dogIter.next(), catentity.getFields().iterator().next());
+
+            Entity nWay = boundedContextUtils.mergeEntities(Arrays.asList(dogEntity, catentity), Collections.singletonList(fieldMapping));
+            Entity binary = boundedContextUtils.mergeEntities(dogEntity, catentity, fieldMapping);
+            assertEquals(binary.getFields(), nWay.getFields());
+        }
+
+        @Test
+        @DisplayName("mapping count must match")
+        public void testMappingCount(){
+            assertThrows(FieldMappingException.class, () -> boundedContextUtils.mergeEntities(Arrays.asList(dogEntity, catentity), Collections.emptyList()));
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json", "src/test/resources/tsm2_systemContext.json"})
+        @DisplayName("fixture entities match the binary merge")
+        public void testFixtures(String fixture) throws FileNotFoundException {
+            SystemContext systemContext = FileManager.readSystemContextFromFile(fixture);
+            NameStripper.sanitizeSystemContext(systemContext);
+            SimilarityUtils similarityUtils = new SimilarityUtilsImpl();
+
+            List<Module> modules = new ArrayList<>(systemContext.getModules());
+            for(int i = 0; i < modules.size(); i++){
+                for(int j = i + 1; j < modules.size(); j++){
+                    for(Entity one : modules.get(i).getEntities()){
+                        for(Entity two : modules.get(j).getEntities()){
+                            Map<Field, Field> fieldMapping = similarityUtils.globalFieldSimilarity(one, two, SimilarityMode.BASIC).getRight();
+                            if(fieldMapping.isEmpty()){
+                                continue;
+                            }
+                            Entity nWay = boundedContextUtils.mergeEntities(Arrays.asList(one, two), Collections.singletonList(fieldMapping));
+                            Entity binary = boundedContextUtils.mergeEntities(one, two, fieldMapping);
+                            assertEquals(binary.getFields(), nWay.getFields());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     @Nested
     @DisplayName("Module Testing")
     public class ModuleTesting{
@@ -322,6 +434,1129 @@ public class BoundedContextTester {
         }
     }
 
+    @Nested
+    @DisplayName("Similarity Matrix")
+    public class SimilarityMatrixTesting{
+
+        @Test
+        @DisplayName("ties keep every candidate in column order")
+        public void testTies(){
+            SimilarityMatrix matrix = new SparseSimilarityMatrix(1, 4);
+            matrix.set(0, 3, 1.0);
+            matrix.set(0, 1, 1.0);
+            matrix.set(0, 2, 0.5);
+
+            assertEquals(1, matrix.best(0));
+            assertArrayEquals(new int[]{1, 3, 2}, matrix.topK(0, 4));
+            assertArrayEquals(new int[]{1, 3}, matrix.topK(0, 2));
+        }
+
+        @Test
+        @DisplayName("every implementation selects the same non zero candidates")
+        public void testImplementationsAgree(){
+            SimilarityMatrix[] matrices = {
+                    new DenseSimilarityMatrix(3, 3),
+                    new SparseSimilarityMatrix(3, 3),
+                    new BoundedSimilarityMatrix(3, 3, 3)
+            };
+            double[][] scores = {{0.0, 0.7, 0.7}, {0.2, 0.0, 0.9}, {0.0, 0.0, 0.0}};
+            for(SimilarityMatrix matrix : matrices){
+                for(int i = 0; i < 3; i++){
+                    for(int j = 0; j < 3; j++){
+                        matrix.set(i, j, scores[i][j]);
+                    }
+                }
+
+                String name = matrix.getClass().getSimpleName();
+                assertEquals(1, matrix.best(0), name);
+                assertEquals(2, matrix.best(1), name);
+                assertEquals(-1, matrix.best(2), name);
+                assertArrayEquals(new int[]{1, 2}, matrix.topK(0, 3), name);
+                assertArrayEquals(new int[]{2, 0}, matrix.topK(1, 3), name);
+                assertArrayEquals(new int[0], matrix.topK(2, 3), name);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Word Vectors")
+    public class WordVectorTesting{
+
+        private final String table = "3 3\n"
+                + "person 1.0 0.1 0.0\n"
+                + "user 0.9 0.2 0.0\n"
+                + "car 0.0 0.1 1.0\n"
+                + "serial 0.0 1.0 0.2\n"
+                + "number 0.1 1.0 0.0\n";
+
+        @Test
+        @DisplayName("close words are similar")
+        public void testCosine() throws IOException {
+            WordVectors vectors = WordVectors.load(new StringReader(table));
+            assertEquals(5, vectors.size());
+            assertTrue(WordVectors.cosine(vectors.get("Person"), vectors.get("user")) > 0.9);
+            assertTrue(WordVectors.cosine(vectors.get("person"), vectors.get("car")) < 0.2);
+            assertNotNull(vectors.get("serialNumber"));
+            assertNull(vectors.get("engine"));
+        }
+
+        @Test
+        @DisplayName("index finds exact and near names")
+        public void testIndex() throws IOException {
+            WordVectors vectors = WordVectors.load(new StringReader(table));
+            EmbeddingIndex index = new EmbeddingIndex(vectors, Arrays.asList("user", "car", "engine"));
+            int[] candidates = index.candidates("person");
+            assertTrue(Arrays.stream(candidates).anyMatch(id -> id == 0));
+            assertArrayEquals(new int[]{2}, index.candidates("Engine"));
+        }
+    }
+
+    @Nested
+    @DisplayName("WordNet Vocabulary")
+    public class WordNetVocabularyTesting{
+
+        // words the stub database knows, and how often each word was asked for
+        private final Set<String> words = new HashSet<>(Arrays.asList("dog", "flaky"));
+        private final Map<String, Integer> queries = new HashMap<>();
+        private boolean failing = false;
+
+        private ILexicalDatabase stubDatabase(){
+            return (ILexicalDatabase) Proxy.newProxyInstance(ILexicalDatabase.class.getClassLoader(), new Class<?>[]{ILexicalDatabase.class},
+                    (proxy, method, args) -> {
+                        if(!method.getName().equals("getAllConcepts")){
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        String word = (String) args[0];
+                        queries.merge(word, 1, Integer::sum);
+                        if(failing){
+                            throw new IllegalStateException("database unavailable");
+                        }
+                        return words.contains(word)
+                                ? Collections.singletonList(new Concept("00000001-n", POS.n))
+                                : Collections.emptyList();
+                    });
+        }
+
+        @Test
+        @DisplayName("out of vocabulary words are looked up once")
+        public void testOutOfVocabulary(){
+            WordNetVocabulary vocabulary = new WordNetVocabulary(stubDatabase());
+            for(int i = 0; i < 3; i++){
+                assertTrue(vocabulary.concepts("configurationId", POS.n).isEmpty());
+            }
+            assertEquals(1, (int) queries.get("configurationId"));
+            assertEquals(3, vocabulary.getLookups());
+            assertEquals(3, vocabulary.getOutOfVocabularyLookups());
+            assertEquals(1, vocabulary.getDatabaseLookups());
+            assertEquals(1, vocabulary.getOutOfVocabularyWords());
+            assertEquals(1.0, vocabulary.getOutOfVocabularyRate());
+        }
+
+        @Test
+        @DisplayName("known words are served from the cache")
+        public void testKnown(){
+            WordNetVocabulary vocabulary = new WordNetVocabulary(stubDatabase());
+            List<Concept> first = vocabulary.concepts("dog", POS.n);
+            assertEquals(1, first.size());
+            assertSame(first, vocabulary.concepts("dog", POS.n));
+            assertEquals(1, (int) queries.get("dog"));
+            assertEquals(2, vocabulary.getLookups());
+            assertEquals(0, vocabulary.getOutOfVocabularyLookups());
+            assertEquals(1, vocabulary.getDatabaseLookups());
+        }
+
+        @Test
+        @DisplayName("words the database throws for are cached as absent")
+        public void testFailure(){
+            WordNetVocabulary vocabulary = new WordNetVocabulary(stubDatabase());
+            failing = true;
+            for(int i = 0; i < 3; i++){
+                assertTrue(vocabulary.concepts("flaky", POS.n).isEmpty());
+            }
+            assertEquals(1, (int) queries.get("flaky"));
+            assertEquals(1, vocabulary.getDatabaseLookups());
+            assertEquals(1, vocabulary.getFailedLookups());
+            assertEquals(1, vocabulary.getOutOfVocabularyWords());
+            assertEquals(3, vocabulary.getOutOfVocabularyLookups());
+        }
+
+        @Test
+        @DisplayName("the caches are bounded")
+        public void testCapacity(){
+            WordNetVocabulary vocabulary = new WordNetVocabulary(stubDatabase(), 2);
+            for(String word : Arrays.asList("one", "two", "three")){
+                vocabulary.concepts(word, POS.n);
+            }
+            assertEquals(2, vocabulary.getOutOfVocabularyWords());
+
+            // the least recently used word was dropped and is looked up again
+            vocabulary.concepts("one", POS.n);
+            assertEquals(2, (int) queries.get("one"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Lexical Similarity")
+    public class LexicalSimilarityTesting{
+
+        @ParameterizedTest
+        @CsvSource(value = {"kitten, sitting, 3", "exam, exams, 1", "flaw, lawn, 2", "'', abc, 3", "configurationId, configurationID, 1"})
+        public void editDistanceTest(String one, String two, int distance){
+            assertEquals(distance, LexicalSimilarity.editDistance(one, two));
+            assertEquals(distance, LexicalSimilarity.editDistance(two, one));
+        }
+
+        @Test
+        @DisplayName("the prefix only boosts a jaro similarity above 0.7")
+        public void jaroWinklerTest(){
+            assertEquals(0.961, LexicalSimilarity.jaroWinkler("martha", "marhta"), 0.001);
+            assertEquals(2.0 / 3.0, LexicalSimilarity.jaroWinkler("abxy", "abpq"), 1e-9);
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"exam, exams", "serialNumber, serial_number", "examDate, dateOfExam", "configurationId, configuration"})
+        public void similarTest(String one, String two){
+            assertTrue(LexicalSimilarity.similarity(one, two) > 0.6);
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"person, car", "id, ip", "brand, engine"})
+        public void dissimilarTest(String one, String two){
+            assertTrue(LexicalSimilarity.similarity(one, two) < 0.9);
+        }
+    }
+
+    @Nested
+    @DisplayName("Entity Deduplication")
+    public class DeduplicationTesting{
+
+        private Entity account(){
+            return account("Account");
+        }
+
+        private Entity account(String name){
+            Entity account = new Entity(name);
+            account.setFields(new HashSet<>(Arrays.asList(new Field("string", "owner"), new Field("long", "balance"))));
+            return account;
+        }
+
+        @Test
+        @DisplayName("exact copies are collapsed")
+        public void testCopiesCollapsed(){
+            Module one = new Module("one");
+            Module two = new Module("two");
+            Module three = new Module("three");
+            one.getEntities().add(account());
+            two.getEntities().add(account());
+            Entity changed = account();
+            changed.getFields().add(new Field("string", "currency"));
+            three.getEntities().add(changed);
+
+            Map<String, List<String>> provenance = new EntityDeduplicator().deduplicate(Arrays.asList(one, two, three));
+
+            assertEquals(1, one.getEntities().size());
+            assertEquals(0, two.getEntities().size());
+            assertEquals(1, three.getEntities().size());
+            assertEquals(Collections.singletonList("two"), provenance.get("one::Account"));
+        }
+
+        @Test
+        @DisplayName("names that differ only in case are not copies")
+        public void testCaseSensitive(){
+            Module one = new Module("one");
+            Module two = new Module("two");
+            one.getEntities().add(account());
+            two.getEntities().add(account("account"));
+
+            assertTrue(new EntityDeduplicator().deduplicate(Arrays.asList(one, two)).isEmpty());
+            assertEquals(1, two.getEntities().size());
+        }
+
+        @Test
+        @DisplayName("provenance keeps modules with colliding sanitized names apart")
+        public void testModuleIds(){
+            Module first = new Module("com.a.pets");
+            Module second = new Module("com.b.pets");
+            first.setEntities(new HashSet<>(Collections.singletonList(account())));
+            second.setEntities(new HashSet<>(Collections.singletonList(account())));
+            SystemContext systemContext = new SystemContext("pets", null);
+            systemContext.setModules(new HashSet<>(Arrays.asList(first, second)));
+
+            BoundedContextUtilsImpl utils = new BoundedContextUtilsImpl();
+            utils.createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+            Map<String, List<String>> provenance = utils.getProvenance();
+            assertEquals(1, provenance.size());
+            Map.Entry<String, List<String>> kept = provenance.entrySet().iterator().next();
+            Set<String> modules = new HashSet<>(kept.getValue());
+            modules.add(kept.getKey().substring(0, kept.getKey().indexOf("::")));
+            assertEquals(new HashSet<>(Arrays.asList("com.a.pets", "com.b.pets")), modules);
+        }
+
+        private BoundedContext create(SystemContext systemContext, boolean deduplicating, long budget){
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setDeterministic(true);
+            config.setDeduplicating(deduplicating);
+            config.setMemoryBudget(budget);
+            return new BoundedContextUtilsImpl(config).createBoundedContext(systemContext, SimilarityMode.BASIC);
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"0", "1"})
+        @DisplayName("deduplication gives the same bounded context as merging every copy")
+        public void testSameResult(long budget){
+            // the copy in "a" meets the kept copy after it went unmatched through "b"
+            Module a = new Module("a");
+            a.getEntities().add(account());
+            a.getEntities().add(account("Order"));
+            Module b = new Module("b");
+            b.getEntities().add(account("Parcel"));
+            Module c = new Module("c");
+            c.getEntities().add(account());
+            c.getEntities().add(account("Invoice"));
+            SystemContext systemContext = new SystemContext("bank", new HashSet<>(Arrays.asList(a, b, c)));
+
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setDeterministic(true);
+            config.setMemoryBudget(budget);
+            BoundedContextUtilsImpl utils = new BoundedContextUtilsImpl(config);
+            BoundedContext deduplicated = utils.createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+            assertEquals(1, utils.getProvenance().size());
+            assertEquals(ContentHash.of(create(systemContext, false, budget)), ContentHash.of(deduplicated));
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json, 0", "src/test/resources/tsm2_systemContext.json, 0",
+                "src/test/resources/tsm2_systemContext.json, 1"})
+        @DisplayName("deduplication gives the same bounded context for the fixtures")
+        public void testSameResultFixtures(String fixture, long budget) throws FileNotFoundException {
+            BoundedContext deduplicated = create(FileManager.readSystemContextFromFile(fixture), true, budget);
+            BoundedContext merged = create(FileManager.readSystemContextFromFile(fixture), false, budget);
+
+            assertEquals(ContentHash.of(merged), ContentHash.of(deduplicated));
+        }
+    }
+
+    @Nested
+    @DisplayName("Global Merging")
+    public class GlobalMergeTesting{
+
+        private Entity entity(String name, String... fieldNames){
+            Entity entity = new Entity(name);
+            Set<Field> fields = new HashSet<>();
+            for(String fieldName : fieldNames){
+                fields.add(new Field("string", fieldName));
+            }
+            entity.setFields(fields);
+            return entity;
+        }
+
+        private SystemContext system(){
+            Module orders = new Module("orders");
+            orders.getEntities().add(entity("Order", "id", "total"));
+            orders.getEntities().add(entity("Invoice", "id", "amount"));
+            Module shipping = new Module("shipping");
+            shipping.getEntities().add(entity("order", "id", "address"));
+            shipping.getEntities().add(entity("Parcel", "weight"));
+            Module billing = new Module("billing");
+            billing.getEntities().add(entity("Order", "id", "total", "tax"));
+            return new SystemContext("shop", new HashSet<>(Arrays.asList(orders, shipping, billing)));
+        }
+
+        @Test
+        @DisplayName("similar entities of all modules become one")
+        public void testGroups(){
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setMergeStrategy(MergeStrategy.GLOBAL);
+            BoundedContext boundedContext = new BoundedContextUtilsImpl(config).createBoundedContext(system(), SimilarityMode.BASIC);
+
+            // the three orders, the invoice and the parcel
+            assertEquals(3, boundedContext.getEntities().size());
+        }
+
+        @Test
+        @DisplayName("members joined through a chain are aligned with the member they joined")
+        public void testChainedMember(){
+            // Items is similar to Item and to ItemsList, but ItemsList is not similar to Item
+            Module a = new Module("a");
+            a.getEntities().add(entity("Item", "id", "name"));
+            Module b = new Module("b");
+            b.getEntities().add(entity("Items", "id", "name"));
+            Module c = new Module("c");
+            c.getEntities().add(entity("ItemsList", "id", "name", "total"));
+
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setMergeStrategy(MergeStrategy.GLOBAL);
+            BoundedContext boundedContext = new BoundedContextUtilsImpl(config).createBoundedContext(new SystemContext("shop", new HashSet<>(Arrays.asList(a, b, c))), SimilarityMode.LEXICAL);
+
+            assertEquals(1, boundedContext.getEntities().size());
+            Set<String> fieldNames = new HashSet<>();
+            for(Field f : boundedContext.getEntities().iterator().next().getFields()){
+                fieldNames.add(f.getName().getFullName());
+            }
+            assertEquals(new HashSet<>(Arrays.asList("id", "name", "ItemsList::total")), fieldNames);
+        }
+    }
+
+    @Nested
+    @DisplayName("Memory Bounded Merging")
+    public class MemoryBoundedTesting{
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json, 1", "src/test/resources/tsm2_systemContext.json, 1",
+                "src/test/resources/jan_systemContext.json, 1000000000"})
+        @DisplayName("spilling gives the same bounded context")
+        public void testSameResult(String fixture, long budget) throws FileNotFoundException {
+            BoundedContextConfig unboundedConfig = new BoundedContextConfig();
+            unboundedConfig.setDeterministic(true);
+            BoundedContextConfig config = new BoundedContextConfig(unboundedConfig);
+            config.setMemoryBudget(budget);
+            config.setCandidateLimit(1000);
+
+            BoundedContext unbounded = new BoundedContextUtilsImpl(unboundedConfig).createBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+            BoundedContext bounded = new BoundedContextUtilsImpl(config).createBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            assertEquals(ContentHash.of(unbounded), ContentHash.of(bounded));
+        }
+
+        @Test
+        @DisplayName("fields without annotations can be spilled")
+        public void testNullAnnotations(){
+            Field name = new Field("string", "name");
+            name.setAnnotations(null);
+            Entity owner = new Entity("Owner");
+            owner.setFields(new HashSet<>(Collections.singletonList(name)));
+            Module one = new Module("one");
+            one.getEntities().add(owner);
+            Module two = new Module("two");
+            two.getEntities().add(dogEntity.clone());
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setMemoryBudget(1);
+
+            BoundedContext boundedContext = new BoundedContextUtilsImpl(config)
+                    .createBoundedContext(new SystemContext("pets", new HashSet<>(Arrays.asList(one, two))), SimilarityMode.BASIC);
+
+            assertEquals(2, boundedContext.getEntities().size());
+        }
+
+        @Test
+        @DisplayName("only the best candidates are kept")
+        public void testTopK(){
+            SimilarityMatrix matrix = new BoundedSimilarityMatrix(1, 5, 2);
+            matrix.set(0, 0, 0.2);
+            matrix.set(0, 1, 0.9);
+            matrix.set(0, 2, 0.5);
+            matrix.set(0, 3, 0.9);
+            matrix.set(0, 4, 0.0);
+
+            assertArrayEquals(new int[]{1, 3}, matrix.topK(0, 5));
+            assertEquals(0.0, matrix.get(0, 2));
+        }
+
+        @Test
+        @DisplayName("ties with the last kept candidate can be kept too")
+        public void testTopKTies(){
+            SimilarityMatrix matrix = new BoundedSimilarityMatrix(1, 5, 1, true);
+            matrix.set(0, 3, 0.5);
+            matrix.set(0, 0, 0.5);
+            matrix.set(0, 2, 0.2);
+            assertArrayEquals(new int[]{0, 3}, matrix.topK(0, 5));
+
+            matrix.set(0, 4, 0.9);
+            assertArrayEquals(new int[]{4}, matrix.topK(0, 5));
+            assertEquals(0.0, matrix.get(0, 0));
+        }
+
+        private Entity account(String name, String reference){
+            Entity account = new Entity(name);
+            account.setFields(new HashSet<>(Collections.singletonList(new Field("long", "balance"))));
+            if (reference != null) {
+                Field field = new Field(reference, "owner");
+                field.setReference(true);
+                account.getFields().add(field);
+            }
+            return account;
+        }
+
+        @ParameterizedTest
+        @CsvSource(value = {"1", "1000000000"})
+        @DisplayName("tied entities are told apart by their references within a budget too")
+        public void testTies(long budget){
+            // the Account of "b" is merged into "a", where ACCOUNT and account tie and only account shares its reference
+            Module a = new Module("a");
+            a.getEntities().add(account("ACCOUNT", null));
+            a.getEntities().add(account("account", "Owner"));
+            Entity owner = new Entity("Owner");
+            owner.setFields(new HashSet<>(Collections.singletonList(new Field("string", "name"))));
+            a.getEntities().add(owner);
+            Module b = new Module("b");
+            b.getEntities().add(account("Account", "Owner"));
+            SystemContext systemContext = new SystemContext("bank", new HashSet<>(Arrays.asList(a, b)));
+
+            BoundedContextConfig unboundedConfig = new BoundedContextConfig();
+            unboundedConfig.setDeterministic(true);
+            BoundedContextConfig config = new BoundedContextConfig(unboundedConfig);
+            config.setMemoryBudget(budget);
+
+            BoundedContext unbounded = new BoundedContextUtilsImpl(unboundedConfig).createBoundedContext(systemContext, SimilarityMode.BASIC);
+            BoundedContext bounded = new BoundedContextUtilsImpl(config).createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+            Set<String> names = new HashSet<>();
+            for (Entity entity : bounded.getEntities()) {
+                names.add(entity.getEntityName().getName());
+            }
+            assertEquals(new HashSet<>(Arrays.asList("Account", "ACCOUNT", "Owner")), names);
+            assertEquals(ContentHash.of(unbounded), ContentHash.of(bounded));
+        }
+    }
+
+    @Nested
+    @DisplayName("Field Similarity")
+    public class FieldSimilarityTesting{
+
+        private final SimilarityUtils similarityUtils = new SimilarityUtilsImpl();
+
+        @Test
+        @DisplayName("matching fields score their name similarity")
+        public void testMatching(){
+            Field one = new Field("string", "name");
+            Field two = new Field("string", "name");
+            assertEquals(1.0, similarityUtils.localFieldSimilarity(one, two, SimilarityMode.BASIC), 1e-9);
+        }
+
+        @Test
+        @DisplayName("types, annotations and flags lower the score")
+        public void testDiffering(){
+            Field one = new Field("string", "name");
+            Field sameType = new Field("string", "name");
+            Field otherType = new Field("long", "name");
+            sameType.setAnnotations(new HashSet<>(Collections.singletonList(new Annotation("Id", "", 0))));
+            otherType.setCollection(true);
+
+            double annotated = similarityUtils.localFieldSimilarity(one, sameType, SimilarityMode.BASIC);
+            double retyped = similarityUtils.localFieldSimilarity(one, otherType, SimilarityMode.BASIC);
+            assertTrue(annotated < 1.0 && annotated > 0.5);
+            assertTrue(retyped < annotated);
+        }
+
+        @Test
+        @DisplayName("types that widen into each other agree in part")
+        public void testWidening(){
+            Type[] types = Type.values();
+            Field one = new Field(types[0].name(), "name");
+            Field neighbour = new Field(types[1].name(), "name");
+            Field distant = new Field(types[2].name(), "name");
+
+            double widened = similarityUtils.localFieldSimilarity(one, neighbour, SimilarityMode.BASIC);
+            assertTrue(widened < similarityUtils.localFieldSimilarity(one, new Field(types[0].name(), "name"), SimilarityMode.BASIC));
+            assertTrue(widened > similarityUtils.localFieldSimilarity(one, distant, SimilarityMode.BASIC));
+        }
+
+        @Test
+        @DisplayName("unrelated names score nothing")
+        public void testUnrelated(){
+            Field one = new Field("string", "name");
+            Field two = new Field("string", "weight");
+            assertEquals(0.0, similarityUtils.localFieldSimilarity(one, two, SimilarityMode.BASIC), 1e-9);
+        }
+    }
+
+    @Nested
+    @DisplayName("Reference Rewriting")
+    public class ReferenceTesting{
+
+        @Test
+        @DisplayName("references follow merged entities")
+        public void testReferencesFollowMerges(){
+            Module a = new Module("a");
+            Entity owner = new Entity("Owner");
+            owner.setFields(new HashSet<>(Collections.singletonList(new Field("string", "name"))));
+            a.setEntities(new HashSet<>(Collections.singletonList(owner)));
+
+            Module b = new Module("b");
+            Entity owners = new Entity("Owners");
+            owners.setFields(new HashSet<>(Collections.singletonList(new Field("string", "name"))));
+            Entity dog = new Entity("Dog");
+            Field dogOwner = new Field("Owners", "owner");
+            dogOwner.setReference(true);
+            dog.setFields(new HashSet<>(Collections.singletonList(dogOwner)));
+            b.setEntities(new HashSet<>(Arrays.asList(owners, dog)));
+
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setMergeStrategy(MergeStrategy.GLOBAL);
+            config.setEntitySimilarityCutoff(0.8);
+            BoundedContext boundedContext = new BoundedContextUtilsImpl(config).createBoundedContext(new SystemContext("pets", new HashSet<>(Arrays.asList(a, b))), SimilarityMode.LEXICAL);
+
+            // Owners is merged into Owner, so the reference of the dog has to point at Owner
+            assertEquals(2, boundedContext.getEntities().size());
+            Entity mergedDog = boundedContext.getEntities().stream()
+                    .filter(e -> e.getEntityName().getName().equals("Dog"))
+                    .findFirst()
+                    .orElseThrow(AssertionError::new);
+            Field reference = mergedDog.getFields().iterator().next();
+            assertTrue(reference.isReference());
+            assertEquals("Owner", reference.getType());
+            // the system given is not changed
+            assertEquals("Owners", dogOwner.getType());
+        }
+    }
+
+    @Nested
+    @DisplayName("Similarity Profile")
+    public class SimilarityProfileTesting{
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json, 0.9", "src/test/resources/tsm2_systemContext.json, 0.9",
+                "src/test/resources/tsm2_systemContext.json, 0.5"})
+        @DisplayName("evaluating a cutoff matches the global strategy")
+        public void testMatchesGlobal(String fixture, double cutoff) throws FileNotFoundException {
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setMergeStrategy(MergeStrategy.GLOBAL);
+            config.setEntitySimilarityCutoff(cutoff);
+
+            SimilarityProfile profile = new BoundedContextUtilsImpl().createSimilarityProfile(FileManager.readSystemContextFromFile(fixture), SimilarityMode.LEXICAL);
+            BoundedContext boundedContext = new BoundedContextUtilsImpl(config).createBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.LEXICAL);
+
+            assertEquals(boundedContext.getEntities().size(), profile.evaluate(cutoff).getGroupCount());
+        }
+
+        @Test
+        @DisplayName("the binary export reads back")
+        public void testBinaryRoundTrip() throws IOException {
+            SimilarityProfile profile = new BoundedContextUtilsImpl().createSimilarityProfile(FileManager.readSystemContextFromFile("src/test/resources/tsm2_systemContext.json"), SimilarityMode.LEXICAL);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            profile.writeBinary(out);
+            SimilarityProfile read = SimilarityProfile.readBinary(new ByteArrayInputStream(out.toByteArray()));
+
+            assertEquals(profile.getEntityCount(), read.getEntityCount());
+            assertEquals(profile.getPairCount(), read.getPairCount());
+            for (int p = 0; p < profile.getPairCount(); p++) {
+                assertEquals(profile.getSimilarity(p), read.getSimilarity(p));
+            }
+            assertEquals(profile.evaluate(0.7).getGroupCount(), read.evaluate(0.7).getGroupCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Sanitizing")
+    public class SanitizeTesting{
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json", "src/test/resources/tsm2_systemContext.json"})
+        @DisplayName("the system given is not changed")
+        public void testInputUnchanged(String fixture) throws FileNotFoundException {
+            SystemContext systemContext = FileManager.readSystemContextFromFile(fixture);
+            String before = ContentHash.of(systemContext);
+
+            new BoundedContextUtilsImpl().createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+            assertEquals(before, ContentHash.of(systemContext));
+        }
+
+        @Test
+        @DisplayName("original names are recorded")
+        public void testOriginalNames(){
+            Module module = new Module("com.example.pets");
+            Entity owner = new Entity("Owner");
+            owner.setFields(new HashSet<>(Collections.singletonList(new Field("string", "owner.name"))));
+            module.setEntities(new HashSet<>(Collections.singletonList(owner)));
+
+            Map<String, String> originalNames = new HashMap<>();
+            Module copy = NameStripper.sanitizedCopy(module, originalNames);
+
+            assertEquals("pets", copy.getName().getName());
+            assertEquals("com.example.pets", module.getName().getName());
+            assertEquals("name", copy.getEntities().iterator().next().getFields().iterator().next().getName().getFullName());
+            assertEquals("com.example.pets", originalNames.get("com.example.pets"));
+        }
+
+        private Module pets(String moduleName, String fieldFullName){
+            Field name = new Field("string", "name");
+            name.getName().setFullName(fieldFullName);
+            Entity owner = new Entity("Owner");
+            owner.setFields(new HashSet<>(Collections.singletonList(name)));
+            Module module = new Module(moduleName);
+            module.setEntities(new HashSet<>(Collections.singletonList(owner)));
+            return module;
+        }
+
+        @Test
+        @DisplayName("original names of modules with the same sanitized name stay apart")
+        public void testOriginalNamesCollide(){
+            SystemContext systemContext = new SystemContext("pets", new HashSet<>(Arrays.asList(
+                    pets("com.a.pets", "com.a.Owner.name"), pets("com.b.pets", "com.b.Owner.name"))));
+
+            BoundedContextUtilsImpl utils = new BoundedContextUtilsImpl();
+            utils.createBoundedContext(systemContext, SimilarityMode.BASIC);
+
+            assertEquals("com.a.Owner.name", utils.getOriginalNames().get("com.a.pets::Owner::name"));
+            assertEquals("com.b.Owner.name", utils.getOriginalNames().get("com.b.pets::Owner::name"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Deterministic Merging")
+    public class DeterministicTesting{
+
+        @ParameterizedTest
+        @CsvSource(value = {"src/test/resources/jan_systemContext.json, PAIRWISE", "src/test/resources/tsm2_systemContext.json, PAIRWISE",
+                "src/test/resources/tsm2_systemContext.json, GLOBAL"})
+        @DisplayName("repeated runs give the same json")
+        public void testRepeatable(String fixture, MergeStrategy strategy) throws FileNotFoundException {
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setDeterministic(true);
+            config.setMergeStrategy(strategy);
+
+            BoundedContext first = new BoundedContextUtilsImpl(config).createBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+            BoundedContext second = new BoundedContextUtilsImpl(config).createBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            assertEquals(new Gson().toJson(first), new Gson().toJson(second));
+            assertEquals(ContentHash.of(first), ContentHash.of(second));
+        }
+
+        @Test
+        @DisplayName("the content hash ignores set order")
+        public void testHashIgnoresOrder(){
+            Entity one = new Entity("Owner");
+            one.setFields(new LinkedHashSet<>(Arrays.asList(new Field("string", "name"), new Field("int", "id"))));
+            Entity two = new Entity("Owner");
+            two.setFields(new LinkedHashSet<>(Arrays.asList(new Field("int", "id"), new Field("string", "name"))));
+            Entity other = new Entity("Owner");
+            other.setFields(new LinkedHashSet<>(Arrays.asList(new Field("long", "id"), new Field("string", "name"))));
+
+            assertEquals(ContentHash.of(one), ContentHash.of(two));
+            assertNotEquals(ContentHash.of(one), ContentHash.of(other));
+        }
+    }
+
+    @Nested
+    @DisplayName("Execution Backends")
+    public class ExecutionBackendTesting{
+
+        @Test
+        @DisplayName("asynchronous analysis gives the same bounded context")
+        public void testAsync() throws Exception {
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setDeterministic(true);
+            try (ExecutionBackend backend = ExecutionBackend.platform(2)) {
+                config.setExecutionBackend(backend);
+                BoundedContextApi api = new BoundedContextApiImpl(config);
+
+                BoundedContext expected = api.getBoundedContext(FileManager.readSystemContextFromFile("src/test/resources/jan_systemContext.json"), SimilarityMode.BASIC);
+                BoundedContext actual = api.getBoundedContextAsync(FileManager.readSystemContextFromFile("src/test/resources/jan_systemContext.json"), SimilarityMode.BASIC).get();
+
+                assertEquals(ContentHash.of(expected), ContentHash.of(actual));
+            }
+        }
+
+        @Test
+        @DisplayName("failures complete the future exceptionally")
+        public void testFailure() {
+            try (ExecutionBackend backend = ExecutionBackend.automatic(1)) {
+                CompletableFuture<Object> result = backend.submit(() -> {
+                    throw new IllegalStateException("expected");
+                });
+                ExecutionException e = assertThrows(ExecutionException.class, result::get);
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Result Caching")
+    public class ResultCacheTesting{
+
+        private final String fixture = "src/test/resources/jan_systemContext.json";
+
+        @Test
+        @DisplayName("resubmitted systems come from the cache as copies")
+        public void testMemoryCache() throws FileNotFoundException {
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setResultCacheBytes(1 << 20);
+            BoundedContextApiImpl api = new BoundedContextApiImpl(config);
+
+            BoundedContext first = api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            BoundedContext second = api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+            BoundedContext third = api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            assertEquals(1, api.getCacheMisses());
+            assertEquals(2, api.getCacheHits());
+            assertEquals(ContentHash.of(first), ContentHash.of(second));
+            assertNotSame(first, second);
+            assertNotSame(second, third);
+
+            api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.LEXICAL);
+            assertEquals(2, api.getCacheMisses());
+        }
+
+        @Test
+        @DisplayName("results outlive the api on disk")
+        public void testDiskCache() throws IOException {
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setResultCacheDirectory(Files.createTempDirectory("bounded-context-cache"));
+
+            BoundedContext created = new BoundedContextApiImpl(config).getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            BoundedContextApiImpl api = new BoundedContextApiImpl(config);
+            BoundedContext cached = api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            assertEquals(1, api.getCacheHits());
+            assertEquals(ContentHash.of(created), ContentHash.of(cached));
+        }
+
+        private long cachedBytes(Path directory) throws IOException {
+            long total = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+                for (Path file : files) {
+                    total += Files.size(file);
+                }
+            }
+            return total;
+        }
+
+        @Test
+        @DisplayName("the cache directory is pruned to its limit")
+        public void testDiskPruned() throws IOException {
+            Path directory = Files.createTempDirectory("bounded-context-cache");
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setResultCacheDirectory(directory);
+            new BoundedContextApiImpl(config).getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+            long limit = cachedBytes(directory);
+            assertTrue(limit > 0);
+
+            config.setResultCacheDiskBytes(limit);
+            BoundedContextApiImpl api = new BoundedContextApiImpl(config);
+            api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.LEXICAL);
+            api.getBoundedContext(FileManager.readSystemContextFromFile("src/test/resources/tsm2_systemContext.json"), SimilarityMode.BASIC);
+
+            assertTrue(cachedBytes(directory) <= limit);
+        }
+
+        @Test
+        @DisplayName("a cache directory that cannot be written does not fail the analysis")
+        public void testDiskUnwritable() throws IOException {
+            BoundedContextConfig config = new BoundedContextConfig();
+            // a file where the directory should be
+            config.setResultCacheDirectory(Files.createTempFile("bounded-context-cache", ".json"));
+            BoundedContextApiImpl api = new BoundedContextApiImpl(config);
+
+            BoundedContext boundedContext = api.getBoundedContext(FileManager.readSystemContextFromFile(fixture), SimilarityMode.BASIC);
+
+            assertNotNull(boundedContext);
+            assertEquals(1, api.getCacheMisses());
+        }
+    }
+
+    @Nested
+    @DisplayName("Command Line")
+    public class CommandLineTesting{
+
+        private final String fixture = "src/test/resources/jan_systemContext.json";
+
+        @ParameterizedTest
+        @CsvSource(value = {"--mode nonsense in.json", "--parallelism 0 in.json", "--parallelism many in.json", "--unknown 1 in.json",
+                "--backend green in.json", "in.json --cutoff", "--mode basic"}, delimiter = ';')
+        @DisplayName("a wrong command line exits with 2")
+        public void testWrongArguments(String args){
+            assertEquals(2, BoundedContextCli.execute(args.split(" ")));
+        }
+
+        @Test
+        @DisplayName("every input gets a bounded context")
+        public void testOutputs() throws IOException {
+            Path output = Files.createTempDirectory("bounded-context-cli");
+
+            assertEquals(0, BoundedContextCli.execute("--mode", "basic", "--deterministic", "--output", output.toString(), "src/test/resources"));
+
+            for(String name : Arrays.asList("jan_systemContext", "tsm2_systemContext")){
+                Path written = output.resolve(name + ".boundedContext.json");
+                assertTrue(Files.isRegularFile(written), name);
+                BoundedContext read;
+                try(Reader in = Files.newBufferedReader(written, StandardCharsets.UTF_8)){
+                    read = new Gson().fromJson(in, BoundedContext.class);
+                }
+                BoundedContextConfig config = new BoundedContextConfig();
+                config.setDeterministic(true);
+                BoundedContext expected = new BoundedContextUtilsImpl(config).createBoundedContext(FileManager.readSystemContextFromFile("src/test/resources/" + name + ".json"), SimilarityMode.BASIC);
+                assertEquals(ContentHash.of(expected), ContentHash.of(read), name);
+            }
+        }
+
+        @Test
+        @DisplayName("a failed input exits with 1 and the others are still written")
+        public void testFailedInput() throws IOException {
+            Path output = Files.createTempDirectory("bounded-context-cli");
+            Path broken = Files.createTempFile("broken", ".json");
+            Files.write(broken, "{ not json".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(1, BoundedContextCli.execute("--mode", "basic", "--output", output.toString(), broken.toString(), fixture));
+            assertTrue(Files.isRegularFile(output.resolve("jan_systemContext.boundedContext.json")));
+            assertEquals(1, BoundedContextCli.execute("--output", output.toString(), "no/such/file.json"));
+        }
+
+        @Test
+        @DisplayName("inputs with the same file name are written apart or refused")
+        public void testSameFileName() throws IOException {
+            Path input = Files.createTempDirectory("bounded-context-cli");
+            Path output = Files.createTempDirectory("bounded-context-cli");
+            for(String dir : Arrays.asList("a", "b")){
+                Files.createDirectories(input.resolve(dir));
+                Files.copy(Paths.get(fixture), input.resolve(dir).resolve("system.json"));
+            }
+
+            assertEquals(0, BoundedContextCli.execute("--mode", "basic", "--output", output.toString(), input.toString()));
+            assertTrue(Files.isRegularFile(output.resolve("a").resolve("system.boundedContext.json")));
+            assertTrue(Files.isRegularFile(output.resolve("b").resolve("system.boundedContext.json")));
+
+            assertEquals(1, BoundedContextCli.execute("--mode", "basic", "--output", output.toString(),
+                    input.resolve("a").resolve("system.json").toString(), input.resolve("b").resolve("system.json").toString()));
+        }
+
+        @Test
+        @DisplayName("a similarity profile is written as csv and binary")
+        public void testSimilarityProfile() throws IOException {
+            Path output = Files.createTempDirectory("bounded-context-cli");
+
+            assertEquals(0, BoundedContextCli.execute("--mode", "lexical", "--similarity-profile", "--output", output.toString(), fixture));
+
+            assertTrue(Files.size(output.resolve("jan_systemContext.similarity.csv")) > 0);
+            try(InputStream in = Files.newInputStream(output.resolve("jan_systemContext.similarity.bin"))){
+                assertTrue(SimilarityProfile.readBinary(in).getEntityCount() > 0);
+            }
+        }
+
+        @Test
+        @DisplayName("nested stages are only counted once")
+        public void testProfilerReport(){
+            StageProfiler profiler = new StageProfiler();
+            profiler.run("outer", () -> profiler.run("inner", () -> {
+                long end = System.nanoTime() + 20_000_000L;
+                while(System.nanoTime() < end){
+                    Thread.yield();
+                }
+            }));
+
+            Map<String, StageProfiler.Stage> stages = profiler.getStages();
+            assertEquals(1, stages.get("outer").getCount());
+            assertEquals(1, stages.get("inner").getCount());
+            assertTrue(stages.get("inner").getNanos() >= 20_000_000L);
+            assertTrue(stages.get("outer").getNanos() < stages.get("inner").getNanos());
+
+            String report = profiler.report();
+            assertTrue(report.startsWith("stage"));
+            assertTrue(report.contains("inner"));
+            assertTrue(report.contains("outer"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Http Server")
+    public class ServerTesting{
+
+        private HttpURLConnection post(BoundedContextServer server, byte[] body) throws IOException {
+            return post(server, body, "mode=basic");
+        }
+
+        private HttpURLConnection post(BoundedContextServer server, byte[] body, String query) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + BoundedContextServer.PATH + "?" + query).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            return connection;
+        }
+
+        private String read(HttpURLConnection connection) throws IOException {
+            try (InputStream in = connection.getInputStream()) {
+                return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+            }
+        }
+
+        @Test
+        @DisplayName("identical requests are answered from the cache")
+        public void testCache() throws IOException {
+            BoundedContextServer server = new BoundedContextServer(0, new BoundedContextConfig(), 2, 4, 8);
+            server.start();
+            try {
+                byte[] body = Files.readAllBytes(Paths.get("src/test/resources/jan_systemContext.json"));
+
+                HttpURLConnection first = post(server, body);
+                assertEquals(200, first.getResponseCode());
+                assertEquals("miss", first.getHeaderField(BoundedContextServer.CACHE_HEADER));
+                String firstResult = read(first);
+
+                HttpURLConnection second = post(server, body);
+                assertEquals(200, second.getResponseCode());
+                assertEquals("hit", second.getHeaderField(BoundedContextServer.CACHE_HEADER));
+                assertEquals(firstResult, read(second));
+            } finally {
+                server.stop(0);
+            }
+        }
+
+        /**
+         * holds every analysis in its sanitize stage until released
+         */
+        private class BlockingProfiler extends StageProfiler {
+
+            private final CountDownLatch entered = new CountDownLatch(1);
+
+            private final CountDownLatch release = new CountDownLatch(1);
+
+            @Override
+            public <T> T time(String stage, Supplier<T> work) {
+                if ("sanitize".equals(stage)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.time(stage, work);
+            }
+        }
+
+        private BoundedContextConfig blockingConfig(BlockingProfiler profiler){
+            BoundedContextConfig config = new BoundedContextConfig();
+            config.setProfiler(profiler);
+            return config;
+        }
+
+        private CompletableFuture<HttpURLConnection> postAsync(BoundedContextServer server, byte[] body, String query, ExecutorService clients){
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    HttpURLConnection connection = post(server, body, query);
+                    connection.getResponseCode();
+                    return connection;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, clients);
+        }
+
+        @Test
+        @DisplayName("identical concurrent requests share one analysis")
+        public void testCoalescing() throws Exception {
+            BlockingProfiler profiler = new BlockingProfiler();
+            BoundedContextServer server = new BoundedContextServer(0, blockingConfig(profiler), 1, 0, 8);
+            ExecutorService clients = Executors.newFixedThreadPool(4);
+            server.start();
+            try {
+                byte[] body = Files.readAllBytes(Paths.get("src/test/resources/jan_systemContext.json"));
+
+                List<CompletableFuture<HttpURLConnection>> responses = new ArrayList<>();
+                responses.add(postAsync(server, body, "mode=basic", clients));
+                assertTrue(profiler.entered.await(30, TimeUnit.SECONDS));
+                for (int i = 0; i < 3; i++) {
+                    responses.add(postAsync(server, body, "mode=basic", clients));
+                }
+                // give the other requests time to find the running analysis
+                Thread.sleep(500);
+                profiler.release.countDown();
+
+                Map<String, Integer> sources = new HashMap<>();
+                Set<String> results = new HashSet<>();
+                for (CompletableFuture<HttpURLConnection> response : responses) {
+                    HttpURLConnection connection = response.get(60, TimeUnit.SECONDS);
+                    // with a single permit, a second analysis would have been answered with 503
+                    assertEquals(200, connection.getResponseCode());
+                    sources.merge(connection.getHeaderField(BoundedContextServer.CACHE_HEADER), 1, Integer::sum);
+                    results.add(read(connection));
+                }
+                assertEquals(Integer.valueOf(1), sources.get("miss"));
+                assertEquals(1, results.size());
+            } finally {
+                profiler.release.countDown();
+                clients.shutdownNow();
+                server.stop(0);
+            }
+        }
+
+        @Test
+        @DisplayName("requests past the admitted analyses are answered with 503")
+        public void testOverloaded() throws Exception {
+            BlockingProfiler profiler = new BlockingProfiler();
+            BoundedContextServer server = new BoundedContextServer(0, blockingConfig(profiler), 1, 0, 8);
+            ExecutorService clients = Executors.newFixedThreadPool(2);
+            server.start();
+            try {
+                byte[] body = Files.readAllBytes(Paths.get("src/test/resources/jan_systemContext.json"));
+
+                CompletableFuture<HttpURLConnection> first = postAsync(server, body, "mode=basic", clients);
+                assertTrue(profiler.entered.await(30, TimeUnit.SECONDS));
+
+                // a different cutoff is a different analysis, and the only permit is taken
+                HttpURLConnection second = post(server, body, "mode=basic&cutoff=0.5");
+                assertEquals(503, second.getResponseCode());
+
+                profiler.release.countDown();
+                assertEquals(200, first.get(60, TimeUnit.SECONDS).getResponseCode());
+            } finally {
+                profiler.release.countDown();
+                clients.shutdownNow();
+                server.stop(0);
+            }
+        }
+
+        @Test
+        @DisplayName("requests past the dispatcher queue are answered with 503")
+        public void testDispatcherFull() throws Exception {
+            // one analysis thread and no queue give two dispatcher threads and room for two waiting exchanges
+            BoundedContextServer server = new BoundedContextServer(0, new BoundedContextConfig(), 1, 0, 8);
+            server.start();
+            List<Socket> stalled = new ArrayList<>();
+            try {
+                // each of these announces a body it never sends, so it holds a dispatcher thread or a queue slot
+                for (int i = 0; i < 4; i++) {
+                    Socket socket = new Socket("localhost", server.getPort());
+                    socket.getOutputStream().write(("POST " + BoundedContextServer.PATH + "?mode=basic HTTP/1.1\r\nHost: localhost\r\n"
+                            + "Content-Length: 100\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    stalled.add(socket);
+                    Thread.sleep(100);
+                }
+
+                assertEquals(503, post(server, "{}".getBytes(StandardCharsets.UTF_8)).getResponseCode());
+            } finally {
+                for (Socket socket : stalled) {
+                    socket.close();
+                }
+                server.stop(0);
+            }
+        }
+
+        @Test
+        @DisplayName("bodies over the limit are refused")
+        public void testBodyLimit() throws IOException {
+            BoundedContextServer server = new BoundedContextServer(0, new BoundedContextConfig(), 1, 1, 1, 1024);
+            server.start();
+            try {
+                byte[] body = Files.readAllBytes(Paths.get("src/test/resources/jan_systemContext.json"));
+                assertTrue(body.length > 1024);
+                assertEquals(413, post(server, body).getResponseCode());
+            } finally {
+                server.stop(0);
+            }
+        }
+
+        @Test
+        @DisplayName("malformed bodies are rejected")
+        public void testMalformed() throws IOException {
+            BoundedContextServer server = new BoundedContextServer(0, new BoundedContextConfig(), 1, 1, 1);
+            server.start();
+            try {
+                assertEquals(400, post(server, "{not json".getBytes(StandardCharsets.UTF_8)).getResponseCode());
+            } finally {
+                server.stop(0);
+            }
+        }
+    }
+
     @Test
     @DisplayName("Generate Bounded Context")
     public void testBoundedContext(){
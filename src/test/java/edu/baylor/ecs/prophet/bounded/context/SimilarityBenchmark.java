@@ -0,0 +1,135 @@
+package edu.baylor.ecs.prophet.bounded.context;
+
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.*;
+import edu.baylor.ecs.cloudhubs.prophetdto.systemcontext.Module;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityMode;
+import edu.baylor.ecs.prophet.bounded.context.utils.SimilarityUtils;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.BoundedContextUtilsImpl;
+import edu.baylor.ecs.prophet.bounded.context.utils.impl.SimilarityUtilsImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the similarity modes on the bundled fixtures
+ * <p>
+ * run with {@code mvn test-compile exec:java -Dexec.mainClass=edu.baylor.ecs.prophet.bounded.context.SimilarityBenchmark -Dexec.classpathScope=test}.
+ * The merge counts of each mode are printed first, then JMH measures the throughput of name comparison and of a whole
+ * bounded context. The fixtures carry no expected merges, so the counts show how eagerly a mode merges, not whether
+ * its merges are right.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimilarityBenchmark {
+
+    private static final String[] FIXTURES = {
+            "src/test/resources/jan_systemContext.json",
+            "src/test/resources/tsm2_systemContext.json"
+    };
+
+    @Param({"BASIC", "WU_PALMER", "LEXICAL"})
+    public SimilarityMode mode;
+
+    @Param({"src/test/resources/jan_systemContext.json", "src/test/resources/tsm2_systemContext.json"})
+    public String fixture;
+
+    private SimilarityUtils similarityUtils;
+
+    // every pair of distinct field names in the fixture
+    private List<String[]> namePairs;
+
+    private SystemContext systemContext;
+
+    @Setup(Level.Trial)
+    public void load() throws FileNotFoundException {
+        similarityUtils = new SimilarityUtilsImpl();
+        systemContext = FileManager.readSystemContextFromFile(fixture);
+        namePairs = namePairs(systemContext);
+    }
+
+    @Benchmark
+    public void nameSimilarity(Blackhole blackhole){
+        for(String[] pair : namePairs){
+            blackhole.consume(similarityUtils.nameSimilarity(pair[0], pair[1], mode));
+        }
+    }
+
+    @Benchmark
+    public BoundedContext boundedContext(){
+        return new BoundedContextUtilsImpl().createBoundedContext(systemContext, mode);
+    }
+
+    public static void main(String[] args) throws FileNotFoundException, RunnerException {
+        printMergeCounts();
+        new Runner(new OptionsBuilder().include(SimilarityBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * prints, for each fixture and mode, how many entities are left and how many field names found a counterpart
+     * <p>
+     * there is no ground truth for the fixtures, so these are counts rather than a measure of quality
+     */
+    private static void printMergeCounts() throws FileNotFoundException {
+        System.out.printf("%-45s %-10s %8s %8s %10s%n", "fixture", "mode", "entities", "merged", "fields hit");
+        for(String fixture : FIXTURES){
+            for(SimilarityMode mode : new SimilarityMode[]{SimilarityMode.BASIC, SimilarityMode.WU_PALMER, SimilarityMode.LEXICAL}){
+                SystemContext systemContext = FileManager.readSystemContextFromFile(fixture);
+                int inputEntities = systemContext.getModules().stream().mapToInt(m -> m.getEntities().size()).sum();
+                int outputEntities = new BoundedContextUtilsImpl().createBoundedContext(systemContext, mode).getEntities().size();
+                System.out.printf("%-45s %-10s %8d %8d %9.1f%%%n", fixture, mode, outputEntities,
+                        inputEntities - outputEntities, 100.0 * fieldHitRate(FileManager.readSystemContextFromFile(fixture), mode));
+            }
+        }
+    }
+
+    /**
+     * @return the fraction of field names that are similar (score over 0.5) to a differently spelled field name
+     */
+    private static double fieldHitRate(SystemContext systemContext, SimilarityMode mode){
+        List<String> names = distinctFieldNames(systemContext);
+        SimilarityUtils similarityUtils = new SimilarityUtilsImpl();
+        int hits = 0;
+        for(String one : names){
+            for(String two : names){
+                if(!one.equalsIgnoreCase(two) && similarityUtils.nameSimilarity(one, two, mode) > 0.5){
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return names.isEmpty() ? 0.0 : (double) hits / names.size();
+    }
+
+    private static List<String> distinctFieldNames(SystemContext systemContext){
+        Set<String> names = new TreeSet<>();
+        for(Module m : systemContext.getModules()){
+            for(Entity e : m.getEntities()){
+                for(Field f : e.getFields()){
+                    names.add(f.getName().getName());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static List<String[]> namePairs(SystemContext systemContext){
+        List<String> names = distinctFieldNames(systemContext);
+        List<String[]> pairs = new ArrayList<>();
+        for(int i = 0; i < names.size(); i++){
+            for(int j = i + 1; j < names.size(); j++){
+                pairs.add(new String[]{names.get(i), names.get(j)});
+            }
+        }
+        return pairs;
+    }
+}